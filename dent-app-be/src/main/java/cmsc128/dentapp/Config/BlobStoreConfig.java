@@ -0,0 +1,63 @@
+package cmsc128.dentapp.Config;
+
+import java.io.IOException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import cmsc128.dentapp.modules.storage.services.BlobStore;
+import cmsc128.dentapp.modules.storage.services.FallbackBlobStore;
+import cmsc128.dentapp.modules.storage.services.LocalBlobStore;
+import cmsc128.dentapp.modules.storage.services.PackFileBlobStore;
+import cmsc128.dentapp.modules.storage.services.S3BlobStore;
+
+/**
+ * Chooses where uploads are stored (app.storage.backend): local (files under app.upload.dir, the
+ * default), pack (append-only pack files) or s3 (an S3-compatible bucket). The local store is
+ * always available as well, as the source for BlobMover and, with app.storage.local-fallback, for
+ * reads of files that have not been moved yet.
+ */
+@Configuration
+public class BlobStoreConfig {
+
+  @Bean
+  public LocalBlobStore localBlobStore(@Value("${app.upload.dir:uploads}") String uploadDir) {
+    return new LocalBlobStore(uploadDir);
+  }
+
+  @Bean
+  @Primary
+  public BlobStore blobStore(
+      LocalBlobStore localBlobStore,
+      @Value("${app.storage.backend:local}") String backend,
+      @Value("${app.storage.local-fallback:true}") boolean localFallback,
+      @Value("${app.storage.pack.dir:uploads-packs}") String packDir,
+      @Value("${app.storage.pack.max-pack-bytes:268435456}") long maxPackBytes,
+      @Value("${app.storage.s3.endpoint:}") String s3Endpoint,
+      @Value("${app.storage.s3.region:us-east-1}") String s3Region,
+      @Value("${app.storage.s3.bucket:dentapp-uploads}") String s3Bucket,
+      @Value("${app.storage.s3.prefix:}") String s3Prefix,
+      @Value("${app.storage.s3.access-key:}") String s3AccessKey,
+      @Value("${app.storage.s3.secret-key:}") String s3SecretKey)
+      throws IOException {
+    BlobStore blobStore;
+    switch (backend) {
+      case "local":
+        return localBlobStore;
+      case "pack":
+        blobStore = new PackFileBlobStore(packDir, maxPackBytes);
+        break;
+      case "s3":
+        blobStore =
+            new S3BlobStore(s3Endpoint, s3Region, s3Bucket, s3Prefix, s3AccessKey, s3SecretKey);
+        break;
+      default:
+        throw new IllegalStateException("Unknown app.storage.backend: " + backend);
+    }
+
+    // Until BlobMover has copied everything, older files are only in the local directory
+    return localFallback ? new FallbackBlobStore(blobStore, localBlobStore) : blobStore;
+  }
+}
@@ -0,0 +1,9 @@
+package cmsc128.dentapp.Config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/** Enables the background {@code @Scheduled} jobs (session maintenance and similar) */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {}
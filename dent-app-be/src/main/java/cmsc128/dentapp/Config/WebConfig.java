@@ -1,24 +0,0 @@
-package cmsc128.dentapp.Config;
-
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.context.annotation.Configuration;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
-import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
-
-@Configuration
-public class WebConfig implements WebMvcConfigurer {
-
-  @Value("${app.upload.dir:uploads}")
-  private String uploadDir;
-
-  @Override
-  public void addResourceHandlers(ResourceHandlerRegistry registry) {
-    Path uploadPath = Paths.get(uploadDir);
-    String uploadDirPath = uploadPath.toFile().getAbsolutePath();
-
-    registry.addResourceHandler("/uploads/**").addResourceLocations("file:" + uploadDirPath + "/");
-  }
-}
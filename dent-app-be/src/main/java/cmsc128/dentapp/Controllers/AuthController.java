@@ -2,12 +2,14 @@ package cmsc128.dentapp.Controllers;
 
 import java.security.Principal;
 import java.util.Arrays;
+import java.util.OptionalInt;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import cmsc128.dentapp.Entities.DTO.*;
+import cmsc128.dentapp.Security.JwtAuthenticationFilter;
 import cmsc128.dentapp.Service.AuthenticationService;
 import cmsc128.dentapp.Utils.JwtTokenUtil;
 import jakarta.servlet.http.Cookie;
@@ -28,6 +30,7 @@ public class AuthController {
 
   private final AuthenticationService authenticationService;
   private final JwtTokenUtil jwtTokenUtil;
+  private final JwtAuthenticationFilter jwtAuthenticationFilter;
 
   /** User login endpoint */
   @PostMapping(path = {"/login"})
@@ -216,14 +219,33 @@ public class AuthController {
   @PostMapping(path = {"/cleanup-sessions"})
   public ResponseEntity<ApiResponse> cleanupExpiredSessions() {
     try {
-      authenticationService.cleanupExpiredSessions();
-      return ResponseEntity.ok(new ApiResponse("Expired sessions cleaned up successfully", true));
+      OptionalInt removed = authenticationService.cleanupExpiredSessions();
+      if (removed.isEmpty()) {
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+            .body(new ApiResponse("A session cleanup is already running", false));
+      }
+      return ResponseEntity.ok(
+          new ApiResponse(
+              "Expired sessions cleaned up successfully (" + removed.getAsInt() + " removed)",
+              true));
     } catch (Exception e) {
       return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
           .body(new ApiResponse("Session cleanup failed: " + e.getMessage(), false));
     }
   }
 
+  /** Switch sampled JWT filter tracing on or off at runtime (admin only, 0 disables it) */
+  @PostMapping(path = {"/filter-trace"})
+  public ResponseEntity<ApiResponse> setFilterTrace(@RequestParam int sampleRate) {
+    jwtAuthenticationFilter.setTraceSampleRate(sampleRate);
+    int effectiveRate = jwtAuthenticationFilter.getTraceSampleRate();
+    String message =
+        effectiveRate == 0
+            ? "JWT filter tracing disabled"
+            : "JWT filter tracing enabled for 1 in " + effectiveRate + " requests";
+    return ResponseEntity.ok(new ApiResponse(message, true));
+  }
+
   // Helper methods to extract tokens from cookies
   private String getAccessTokenFromCookies(HttpServletRequest request) {
     return getTokenFromCookies(request, "accessToken");
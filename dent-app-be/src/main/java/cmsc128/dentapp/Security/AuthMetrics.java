@@ -0,0 +1,80 @@
+package cmsc128.dentapp.Security;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/**
+ * Micrometer meters for the JWT authentication filter, exposed through /actuator/metrics. Meters
+ * are registered up front so that recording on the request path is a plain increment.
+ */
+@Component
+public class AuthMetrics {
+
+  public enum FailureReason {
+    MISSING_TOKEN,
+    EXPIRED,
+    BAD_SIGNATURE,
+    MALFORMED,
+    INVALID_CLAIMS,
+    REVOKED,
+    ERROR
+  }
+
+  private final MeterRegistry meterRegistry;
+  private final Counter successCounter;
+  private final Map<FailureReason, Counter> failureCounters = new EnumMap<>(FailureReason.class);
+  private final Map<String, Counter> skipCounters = new ConcurrentHashMap<>();
+  private final Timer filterTimer;
+
+  public AuthMetrics(MeterRegistry meterRegistry) {
+    this.meterRegistry = meterRegistry;
+    this.successCounter =
+        Counter.builder("dentapp.auth.success")
+            .description("Requests authenticated from a valid access token")
+            .register(meterRegistry);
+    for (FailureReason reason : FailureReason.values()) {
+      failureCounters.put(
+          reason,
+          Counter.builder("dentapp.auth.failure")
+              .description("Requests that could not be authenticated, by reason")
+              .tag("reason", reason.name().toLowerCase())
+              .register(meterRegistry));
+    }
+    this.filterTimer =
+        Timer.builder("dentapp.auth.filter.latency")
+            .description("Time spent authenticating a request in the JWT filter")
+            .register(meterRegistry);
+  }
+
+  public void recordSuccess() {
+    successCounter.increment();
+  }
+
+  public void recordFailure(FailureReason reason) {
+    failureCounters.get(reason).increment();
+  }
+
+  public void recordSkip(String publicRoute) {
+    skipCounters
+        .computeIfAbsent(
+            publicRoute,
+            route ->
+                Counter.builder("dentapp.auth.filter.skipped")
+                    .description("Requests to public routes that bypass the JWT filter")
+                    .tag("route", route)
+                    .register(meterRegistry))
+        .increment();
+  }
+
+  public void recordFilterTime(long nanos) {
+    filterTimer.record(nanos, TimeUnit.NANOSECONDS);
+  }
+}
@@ -4,7 +4,9 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -12,42 +14,71 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import cmsc128.dentapp.Utils.JwtTokenUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.security.SecurityException;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   private final JwtTokenUtil jwtTokenUtil;
+  private final AuthMetrics authMetrics;
+  private final SessionRevocationIndex revocationIndex;
+
+  // Log one in every N requests while tracing is on; 0 disables tracing
+  private volatile int traceSampleRate;
+  private final AtomicLong traceSequence = new AtomicLong();
+
+  public JwtAuthenticationFilter(
+      JwtTokenUtil jwtTokenUtil,
+      AuthMetrics authMetrics,
+      SessionRevocationIndex revocationIndex,
+      @Value("${jwt.filter.trace-sample-rate:0}") int traceSampleRate) {
+    this.jwtTokenUtil = jwtTokenUtil;
+    this.authMetrics = authMetrics;
+    this.revocationIndex = revocationIndex;
+    this.traceSampleRate = traceSampleRate;
+  }
 
   @Override
   protected void doFilterInternal(
       HttpServletRequest request, HttpServletResponse response, FilterChain chain)
       throws ServletException, IOException {
 
-    log.info(
-        "JWT Filter - Processing request: {} {}", request.getMethod(), request.getRequestURI());
-    log.info("JWT Filter - Context path: {}", request.getContextPath());
+    long start = System.nanoTime();
+    String outcome;
 
     try {
       String jwt = getAccessTokenFromCookies(request);
-      log.info("JWT Filter - Access token found: {}", jwt != null);
 
-      if (jwt != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-        String username = jwtTokenUtil.getUsernameFromToken(jwt);
-        log.info("JWT Filter - Username from token: {}", username);
+      if (SecurityContextHolder.getContext().getAuthentication() != null) {
+        outcome = "already authenticated";
+      } else if (jwt == null) {
+        authMetrics.recordFailure(AuthMetrics.FailureReason.MISSING_TOKEN);
+        outcome = "no access token";
+      } else {
+        Claims claims = jwtTokenUtil.validateAndExtract(jwt, "ACCESS");
 
-        if (username != null && jwtTokenUtil.validateAccessToken(jwt, username)) {
-          String role = jwtTokenUtil.getRole(jwt);
-          Long userId = jwtTokenUtil.getUserId(jwt);
-          log.info("JWT Filter - Valid token, User ID: {}, Role: {}", userId, role);
+        Long userId = claims != null ? claims.get("userId", Long.class) : null;
+
+        if (claims == null) {
+          authMetrics.recordFailure(AuthMetrics.FailureReason.INVALID_CLAIMS);
+          outcome = "invalid token claims";
+        } else if (revocationIndex.isRevoked(
+            claims.get("sessionId", String.class), userId, claims.getIssuedAt())) {
+          authMetrics.recordFailure(AuthMetrics.FailureReason.REVOKED);
+          outcome = "revoked session";
+        } else {
+          String username = claims.getSubject();
+          String role = claims.get("role", String.class);
 
           List<SimpleGrantedAuthority> authorities =
               Collections.singletonList(new SimpleGrantedAuthority("ROLE_" + role));
@@ -60,21 +91,48 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
           authToken.setDetails(details);
 
           SecurityContextHolder.getContext().setAuthentication(authToken);
-          log.info("JWT Filter - Authentication set successfully");
-        } else {
-          log.info("JWT Filter - Token validation failed");
+          authMetrics.recordSuccess();
+          outcome = "authenticated";
         }
-      } else {
-        log.info("JWT Filter - No JWT token found or authentication already set");
       }
+    } catch (ExpiredJwtException e) {
+      authMetrics.recordFailure(AuthMetrics.FailureReason.EXPIRED);
+      outcome = "expired token";
+    } catch (SecurityException e) {
+      authMetrics.recordFailure(AuthMetrics.FailureReason.BAD_SIGNATURE);
+      outcome = "bad signature";
+    } catch (JwtException | IllegalArgumentException e) {
+      authMetrics.recordFailure(AuthMetrics.FailureReason.MALFORMED);
+      outcome = "malformed token";
     } catch (Exception e) {
+      authMetrics.recordFailure(AuthMetrics.FailureReason.ERROR);
+      outcome = "error";
       log.error("Cannot set user authentication: {}", e.getMessage(), e);
     }
 
-    log.info("JWT Filter - Proceeding with filter chain");
+    authMetrics.recordFilterTime(System.nanoTime() - start);
+    trace(request, outcome);
+
     chain.doFilter(request, response);
   }
 
+  public int getTraceSampleRate() {
+    return traceSampleRate;
+  }
+
+  /** Switches sampled request tracing on (one in every {@code sampleRate} requests) or off (0) */
+  public void setTraceSampleRate(int sampleRate) {
+    this.traceSampleRate = Math.max(sampleRate, 0);
+  }
+
+  private void trace(HttpServletRequest request, String outcome) {
+    int sampleRate = traceSampleRate;
+    if (sampleRate > 0 && traceSequence.incrementAndGet() % sampleRate == 0) {
+      log.info(
+          "JWT Filter trace - {} {}: {}", request.getMethod(), request.getRequestURI(), outcome);
+    }
+  }
+
   private String getAccessTokenFromCookies(HttpServletRequest request) {
     if (request.getCookies() == null) {
       return null;
@@ -89,32 +147,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
   @Override
   protected boolean shouldNotFilter(HttpServletRequest request) {
-    String originalPath = request.getRequestURI();
+    String path = request.getRequestURI();
     String contextPath = request.getContextPath();
 
-    log.info("JWT Filter - shouldNotFilter check:");
-    log.info("JWT Filter - Original URI: {}", originalPath);
-    log.info("JWT Filter - Context path: {}", contextPath);
-
-    // Remove context path to get the relative path
-    String path = originalPath;
+    // Compare against the path relative to the context path
+    int offset = 0;
     if (contextPath != null && !contextPath.isEmpty() && path.startsWith(contextPath)) {
-      path = path.substring(contextPath.length());
+      offset = contextPath.length();
     }
 
-    log.info("JWT Filter - Processed path: {}", path);
-
-    boolean shouldSkip =
-        path.startsWith("/auth/login")
-            || path.startsWith("/auth/refresh")
-            || path.startsWith("/user/signup")
-            || path.startsWith("/swagger-ui")
-            || path.startsWith("/v3/api-docs")
-            || path.startsWith("/actuator");
-
-    log.info("JWT Filter - Should skip authentication: {}", shouldSkip);
+    String publicRoute = PublicRoutes.match(path, offset);
+    if (publicRoute != null) {
+      authMetrics.recordSkip(publicRoute);
+      return true;
+    }
 
-    return shouldSkip;
+    return false;
   }
 
   // Custom authentication details to store user ID and role
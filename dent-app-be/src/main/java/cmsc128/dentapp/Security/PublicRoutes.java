@@ -0,0 +1,93 @@
+package cmsc128.dentapp.Security;
+
+/**
+ * Single registry of the routes that can be reached without authentication. SecurityConfig
+ * permits exactly these patterns and JwtAuthenticationFilter skips exactly these paths, so the
+ * two lists can no longer drift apart.
+ *
+ * <p>The patterns are compiled once into a character trie, which lets the filter classify a
+ * request path without allocating.
+ */
+public final class PublicRoutes {
+
+  // A trailing "/**" matches the path itself and everything below it, anything else is exact
+  private static final String[] PATTERNS = {
+    "/auth/login",
+    "/auth/refresh",
+    "/auth/refresh-token",
+    "/user/signup",
+    "/swagger-ui/**",
+    "/swagger-ui.html",
+    "/v3/api-docs/**",
+    "/actuator/**"
+  };
+
+  private static final String SUBTREE_SUFFIX = "/**";
+
+  private static final Node ROOT = compile();
+
+  private PublicRoutes() {}
+
+  /** Patterns in the form expected by {@code requestMatchers(String...)} */
+  public static String[] patterns() {
+    return PATTERNS.clone();
+  }
+
+  /**
+   * Returns the public pattern that matches {@code path} from {@code offset} onwards (for
+   * example, after the context path), or null if the path requires authentication.
+   */
+  public static String match(String path, int offset) {
+    Node node = ROOT;
+    for (int i = offset; i < path.length(); i++) {
+      char c = path.charAt(i);
+      if (c == '/' && node.subtreePattern != null) {
+        return node.subtreePattern;
+      }
+      if (c >= Node.FANOUT) {
+        return null;
+      }
+      node = node.children[c];
+      if (node == null) {
+        return null;
+      }
+    }
+    return node.exactPattern != null ? node.exactPattern : node.subtreePattern;
+  }
+
+  private static Node compile() {
+    Node root = new Node();
+    for (String pattern : PATTERNS) {
+      boolean subtree = pattern.endsWith(SUBTREE_SUFFIX);
+      String path =
+          subtree ? pattern.substring(0, pattern.length() - SUBTREE_SUFFIX.length()) : pattern;
+
+      Node node = root;
+      for (int i = 0; i < path.length(); i++) {
+        char c = path.charAt(i);
+        if (c >= Node.FANOUT) {
+          throw new IllegalStateException("Public route must be ASCII: " + pattern);
+        }
+        if (node.children[c] == null) {
+          node.children[c] = new Node();
+        }
+        node = node.children[c];
+      }
+
+      if (subtree) {
+        node.subtreePattern = pattern;
+      } else {
+        node.exactPattern = pattern;
+      }
+    }
+    return root;
+  }
+
+  private static final class Node {
+    private static final int FANOUT = 128;
+
+    private final Node[] children = new Node[FANOUT];
+    private String exactPattern;
+    private String subtreePattern;
+  }
+}
@@ -2,6 +2,7 @@ package cmsc128.dentapp.Security;
 
 import java.util.Arrays;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.method.configuration.EnableMethodSecurity;
@@ -28,9 +29,10 @@ public class SecurityConfig {
   private final JwtAuthenticationFilter jwtAuthenticationFilter;
   private final JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
+  /** BCrypt with a configurable cost; hashes with a different cost are upgraded on login */
   @Bean
-  public PasswordEncoder passwordEncoder() {
-    return new BCryptPasswordEncoder();
+  public PasswordEncoder passwordEncoder(@Value("${app.auth.bcrypt.strength:10}") int strength) {
+    return new BCryptPasswordEncoder(strength);
   }
 
   @Bean
@@ -42,18 +44,12 @@ public class SecurityConfig {
         .authorizeHttpRequests(
             auth ->
                 auth
-                    // Public endpoints
-                    .requestMatchers("/auth/login", "/auth/refresh", "/auth/refresh-token")
-                    .permitAll()
-                    .requestMatchers("/user/signup")
-                    .permitAll()
-                    .requestMatchers("/swagger-ui/**", "/v3/api-docs/**", "/swagger-ui.html")
-                    .permitAll()
-                    .requestMatchers("/actuator/**")
+                    // Public endpoints, shared with JwtAuthenticationFilter.shouldNotFilter
+                    .requestMatchers(PublicRoutes.patterns())
                     .permitAll()
 
                     // Admin only endpoints
-                    .requestMatchers("/auth/cleanup-sessions")
+                    .requestMatchers("/auth/cleanup-sessions", "/auth/filter-trace")
                     .hasRole("ADMIN")
                     .requestMatchers("/user/admin/**")
                     .hasRole("ADMIN")
@@ -82,7 +78,7 @@ public class SecurityConfig {
             "http://127.0.0.1:3001"));
 
     configuration.setAllowedMethods(
-        Arrays.asList("GET", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
+        Arrays.asList("GET", "HEAD", "POST", "PUT", "DELETE", "PATCH", "OPTIONS"));
 
     configuration.setAllowedHeaders(
         Arrays.asList(
@@ -90,12 +86,17 @@ public class SecurityConfig {
             "Cache-Control",
             "Content-Type",
             "X-Requested-With",
+            "If-Match",
             "Accept",
             "Origin",
             "Access-Control-Request-Method",
-            "Access-Control-Request-Headers"));
+            "Access-Control-Request-Headers",
+            "Upload-Length",
+            "Upload-Offset"));
 
-    configuration.setExposedHeaders(Arrays.asList("Authorization", "Set-Cookie"));
+    // Location and the Upload-* headers drive the resumable upload protocol
+    configuration.setExposedHeaders(
+        Arrays.asList("Authorization", "Set-Cookie", "Location", "Upload-Length", "Upload-Offset"));
 
     // Allow credentials (cookies)
     configuration.setAllowCredentials(true);
@@ -0,0 +1,164 @@
+package cmsc128.dentapp.Security;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import cmsc128.dentapp.Utils.JwtTokenUtil;
+import cmsc128.dentapp.modules.session.repositories.UserSessionRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory index of revoked sessions, consulted by JwtAuthenticationFilter so that access tokens
+ * of logged-out sessions are rejected without a database round-trip.
+ *
+ * <p>Revoked sessionIds are kept in an exact set fronted by a Bloom filter, so the common case (a
+ * session that was never revoked) is answered from a few bit probes. "Log out everywhere" also
+ * records a per-user cutoff: tokens of that user issued before the cutoff are rejected. Entries
+ * only need to outlive the access tokens they can affect, so they are dropped once an access
+ * token lifetime has passed. The index is preloaded from USER_SESSION at startup.
+ */
+@Component
+@Slf4j
+public class SessionRevocationIndex {
+
+  private static final int HASH_FUNCTIONS = 4;
+
+  private final UserSessionRepository userSessionRepository;
+  private final long retentionMillis;
+  private final int bloomBits;
+
+  // sessionId -> epoch millis after which the entry can be forgotten
+  private final Map<String, Long> revokedSessions = new ConcurrentHashMap<>();
+
+  // userId -> epoch millis; tokens issued before the cutoff are revoked
+  private final Map<Long, Long> userCutoffs = new ConcurrentHashMap<>();
+
+  private volatile AtomicLongArray bloom;
+
+  // Held while a session is revoked and while the filter is rebuilt, so no revocation is lost
+  private final Object bloomLock = new Object();
+
+  public SessionRevocationIndex(
+      UserSessionRepository userSessionRepository,
+      JwtTokenUtil jwtTokenUtil,
+      @Value("${app.revocation.bloom-bits:1048576}") int bloomBits) {
+    this.userSessionRepository = userSessionRepository;
+    this.retentionMillis = jwtTokenUtil.getAccessTokenExpirationTime();
+    this.bloomBits = bloomBits;
+    this.bloom = new AtomicLongArray(words(bloomBits));
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void preload() {
+    LocalDateTime since = LocalDateTime.now().minusSeconds(retentionMillis / 1000);
+    int loaded = 0;
+    for (Object[] row : userSessionRepository.findRevokedSessionsSince(since)) {
+      revokeSession((String) row[0], (LocalDateTime) row[1]);
+      loaded++;
+    }
+    log.info("Session revocation index preloaded with {} revoked sessions", loaded);
+  }
+
+  /** Rejects access tokens of the session from now on */
+  public void revokeSession(String sessionId) {
+    revokeSession(sessionId, LocalDateTime.now());
+  }
+
+  /** Rejects every token of the user issued before now, whatever session it belongs to */
+  public void revokeAllForUser(Long userId) {
+    userCutoffs.put(userId, System.currentTimeMillis());
+  }
+
+  /**
+   * Returns true if a token with these claims belongs to a revoked session or was issued before
+   * its user's cutoff.
+   */
+  public boolean isRevoked(String sessionId, Long userId, Date issuedAt) {
+    if (userId != null && issuedAt != null) {
+      Long cutoff = userCutoffs.get(userId);
+      // JWT iat has second precision, so compare at second precision too
+      if (cutoff != null && issuedAt.getTime() < cutoff - cutoff % 1000) {
+        return true;
+      }
+    }
+
+    return sessionId != null && mightContain(sessionId) && revokedSessions.containsKey(sessionId);
+  }
+
+  /** Forgets entries that can no longer affect a live access token and rebuilds the filter */
+  @Scheduled(fixedDelayString = "${app.revocation.prune-interval:60000}")
+  public void prune() {
+    long now = System.currentTimeMillis();
+    userCutoffs.values().removeIf(cutoff -> cutoff + retentionMillis < now);
+
+    if (revokedSessions.values().removeIf(forgetAt -> forgetAt < now)) {
+      synchronized (bloomLock) {
+        AtomicLongArray rebuilt = new AtomicLongArray(words(bloomBits));
+        revokedSessions.keySet().forEach(sessionId -> add(rebuilt, sessionId));
+        bloom = rebuilt;
+      }
+    }
+  }
+
+  private void revokeSession(String sessionId, LocalDateTime revokedAt) {
+    long revokedAtMillis =
+        (revokedAt != null ? revokedAt : LocalDateTime.now())
+            .atZone(ZoneId.systemDefault())
+            .toInstant()
+            .toEpochMilli();
+    synchronized (bloomLock) {
+      // Add to the filter before the exact set so a concurrent lookup never misses it
+      add(bloom, sessionId);
+      revokedSessions.put(sessionId, revokedAtMillis + retentionMillis);
+    }
+  }
+
+  private boolean mightContain(String sessionId) {
+    AtomicLongArray bits = bloom;
+    long hash = hash64(sessionId);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < HASH_FUNCTIONS; i++) {
+      int bit = Math.floorMod(h1 + i * h2, bloomBits);
+      if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void add(AtomicLongArray bits, String sessionId) {
+    long hash = hash64(sessionId);
+    int h1 = (int) hash;
+    int h2 = (int) (hash >>> 32);
+    for (int i = 0; i < HASH_FUNCTIONS; i++) {
+      int bit = Math.floorMod(h1 + i * h2, bloomBits);
+      long mask = 1L << bit;
+      bits.getAndAccumulate(bit >>> 6, mask, (word, m) -> word | m);
+    }
+  }
+
+  // 64-bit FNV-1a; its two halves drive the double hashing above
+  private static long hash64(String value) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < value.length(); i++) {
+      hash ^= value.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static int words(int bits) {
+    return (bits + 63) >>> 6;
+  }
+}
@@ -2,19 +2,27 @@ package cmsc128.dentapp.Service;
 
 import java.time.LocalDateTime;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import cmsc128.dentapp.Entities.DTO.*;
+import cmsc128.dentapp.Security.SessionRevocationIndex;
 import cmsc128.dentapp.Utils.JwtTokenUtil;
+import cmsc128.dentapp.Utils.TokenDigest;
 import cmsc128.dentapp.modules.session.entities.UserSession;
 import cmsc128.dentapp.modules.session.repositories.UserSessionRepository;
+import cmsc128.dentapp.modules.session.services.ExpiredSessionReaper;
+import cmsc128.dentapp.modules.session.services.SessionTouchBuffer;
 import cmsc128.dentapp.modules.user.entities.User;
 import cmsc128.dentapp.modules.user.repositories.UserRepository;
+import cmsc128.dentapp.modules.user.services.UserProfileCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -27,7 +35,12 @@ public class AuthenticationService {
   private final UserRepository userRepository;
   private final UserSessionRepository userSessionRepository;
   private final JwtTokenUtil jwtTokenUtil;
-  private final PasswordEncoder passwordEncoder;
+  private final PasswordVerificationService passwordVerificationService;
+  private final UserProfileCache userProfileCache;
+  private final SessionTouchBuffer sessionTouchBuffer;
+  private final ExpiredSessionReaper expiredSessionReaper;
+  private final SessionRevocationIndex revocationIndex;
+  private final TransactionTemplate transactionTemplate;
 
   @Value("${app.cookie.domain:localhost}")
   private String cookieDomain;
@@ -38,43 +51,59 @@ public class AuthenticationService {
   @Value("${app.cookie.same-site:Lax}")
   private String cookieSameSite;
 
-  @Transactional
+  /**
+   * Not transactional as a whole: the password check can wait in the BCrypt queue, and no database
+   * connection is held while it does. The rehash and the new session are written in one short
+   * transaction once the password has matched.
+   */
   public AuthResponseDto authenticate(
       LoginRequestDto loginRequest, HttpServletRequest request, HttpServletResponse response) {
     try {
       // Find user by username
       Optional<User> userOptional = userRepository.findByUsername(loginRequest.getUsername());
 
-      if (userOptional.isEmpty()) {
+      // Verify password; unknown users are checked against a dummy hash so timing is the same
+      PasswordVerificationService.VerificationResult verification =
+          passwordVerificationService.verify(
+              loginRequest.getPassword(), userOptional.map(User::getPassword).orElse(null));
+
+      if (userOptional.isEmpty() || !verification.isMatched()) {
         return new AuthResponseDto("Invalid username or password", false, null, null, 0, 0);
       }
 
       User user = userOptional.get();
 
-      // Verify password
-      if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
-        return new AuthResponseDto("Invalid username or password", false, null, null, 0, 0);
-      }
-
       // Create session
       String sessionId = UUID.randomUUID().toString();
       String refreshToken =
           jwtTokenUtil.generateRefreshToken(user.getUsername(), user.getUserId(), sessionId);
       String accessToken =
           jwtTokenUtil.generateAccessToken(
-              user.getUsername(), user.getRole().toString(), user.getUserId());
+              user.getUsername(), user.getRole().toString(), user.getUserId(), sessionId);
 
       // Save session to database
       UserSession session = new UserSession();
       session.setSessionId(sessionId);
       session.setUser(user);
-      session.setRefreshToken(refreshToken);
+      session.setRefreshTokenHash(TokenDigest.sha256Hex(refreshToken));
       session.setIpAddress(getClientIpAddress(request));
       session.setUserAgent(request.getHeader("User-Agent"));
       session.setExpiresAt(LocalDateTime.now().plusSeconds(604800)); // 7 days
       session.setIsActive(true);
 
-      userSessionRepository.save(session);
+      transactionTemplate.executeWithoutResult(
+          status -> {
+            // Store the rehashed password if the old hash was legacy or used another BCrypt cost
+            if (verification.getUpgradedHash() != null) {
+              user.setPassword(verification.getUpgradedHash());
+              userRepository.save(user);
+            }
+            userSessionRepository.save(session);
+          });
+      if (verification.getUpgradedHash() != null) {
+        // The cached profile carries the old updatedDate
+        userProfileCache.invalidate(user.getUserId());
+      }
 
       // Set cookies
       setAccessTokenCookie(response, accessToken);
@@ -91,6 +120,9 @@ public class AuthenticationService {
           jwtTokenUtil.getAccessTokenExpirationTime(),
           jwtTokenUtil.getRefreshTokenExpirationTime());
 
+    } catch (RejectedExecutionException e) {
+      return new AuthResponseDto(
+          "Too many login attempts in progress, please try again", false, null, null, 0, 0);
     } catch (Exception e) {
       return new AuthResponseDto(
           "Authentication failed: " + e.getMessage(), false, null, null, 0, 0);
@@ -106,15 +138,13 @@ public class AuthenticationService {
       }
 
       // Validate refresh token
-      String username = jwtTokenUtil.getUsernameFromToken(refreshToken);
-
-      if (!jwtTokenUtil.validateRefreshToken(refreshToken, username)) {
+      Claims claims = jwtTokenUtil.validateAndExtract(refreshToken, "REFRESH");
+      if (claims == null) {
         return new RefreshTokenResponseDto("Invalid refresh token", false, 0, null);
       }
 
       // Find session in database
-      Optional<UserSession> sessionOptional =
-          userSessionRepository.findByRefreshTokenAndIsActiveTrue(refreshToken);
+      Optional<UserSession> sessionOptional = findActiveSession(refreshToken, claims);
 
       if (sessionOptional.isEmpty()) {
         return new RefreshTokenResponseDto("Session not found or expired", false, 0, null);
@@ -134,11 +164,13 @@ public class AuthenticationService {
       // Generate new access token
       String newAccessToken =
           jwtTokenUtil.generateAccessToken(
-              user.getUsername(), user.getRole().toString(), user.getUserId());
+              user.getUsername(),
+              user.getRole().toString(),
+              user.getUserId(),
+              session.getSessionId());
 
-      // Update session last accessed time
-      session.updateLastAccessed();
-      userSessionRepository.save(session);
+      // Update session last accessed time, written asynchronously in batches
+      sessionTouchBuffer.touch(session.getSessionId());
 
       // Set new access token cookie
       setAccessTokenCookie(response, newAccessToken);
@@ -158,13 +190,16 @@ public class AuthenticationService {
   public ApiResponse logout(String refreshToken, HttpServletResponse response) {
     try {
       if (refreshToken != null && !refreshToken.trim().isEmpty()) {
-        // Find and deactivate session
+        // Find and deactivate session. Only the digest is checked, so a client can still end a
+        // session whose refresh token has already expired
         Optional<UserSession> sessionOptional =
-            userSessionRepository.findByRefreshTokenAndIsActiveTrue(refreshToken);
+            userSessionRepository.findByRefreshTokenHashAndIsActiveTrue(
+                TokenDigest.sha256Hex(refreshToken));
         sessionOptional.ifPresent(
             session -> {
               session.deactivate();
               userSessionRepository.save(session);
+              revocationIndex.revokeSession(session.getSessionId());
             });
       }
 
@@ -180,7 +215,10 @@ public class AuthenticationService {
   @Transactional
   public ApiResponse logoutAllSessions(Long userId, HttpServletResponse response) {
     try {
-      userSessionRepository.deactivateAllSessionsForUser(userId);
+      userSessionRepository.findActiveSessionIdsByUserId(userId)
+          .forEach(revocationIndex::revokeSession);
+      revocationIndex.revokeAllForUser(userId);
+      userSessionRepository.deactivateAllSessionsForUser(userId, LocalDateTime.now());
       clearAuthCookies(response);
       return new ApiResponse("All sessions logged out successfully", true);
     } catch (Exception e) {
@@ -194,14 +232,22 @@ public class AuthenticationService {
         return null;
       }
 
-      String username = jwtTokenUtil.getUsernameFromToken(accessToken);
+      Claims claims = jwtTokenUtil.validateAndExtract(accessToken, "ACCESS");
 
-      if (!jwtTokenUtil.validateAccessToken(accessToken, username)) {
+      if (claims == null) {
         return null;
       }
 
-      Optional<User> userOptional = userRepository.findByUsername(username);
-      return userOptional.map(this::convertToUserDto).orElse(null);
+      Long userId = claims.get("userId", Long.class);
+      if (userId == null) {
+        return userRepository.findByUsername(claims.getSubject())
+            .map(this::convertToUserDto)
+            .orElse(null);
+      }
+
+      return userProfileCache
+          .getByUserId(userId, id -> userRepository.findById(id).map(this::convertToUserDto))
+          .orElse(null);
 
     } catch (Exception e) {
       return null;
@@ -214,16 +260,33 @@ public class AuthenticationService {
         return false;
       }
 
-      String username = jwtTokenUtil.getUsernameFromToken(accessToken);
-      return jwtTokenUtil.validateAccessToken(accessToken, username);
+      return jwtTokenUtil.validateAndExtract(accessToken, "ACCESS") != null;
     } catch (Exception e) {
       return false;
     }
   }
 
-  @Transactional
-  public void cleanupExpiredSessions() {
-    userSessionRepository.cleanupExpiredAndInactiveSessions(LocalDateTime.now());
+  /**
+   * Runs a session reaper pass right away and returns the number of sessions removed, or an empty
+   * result if a pass is already running
+   */
+  public OptionalInt cleanupExpiredSessions() {
+    return expiredSessionReaper.reap();
+  }
+
+  /**
+   * Resolves the session a refresh token belongs to by its sessionId claim (the primary key),
+   * then checks the token against the stored digest in constant time.
+   */
+  private Optional<UserSession> findActiveSession(String refreshToken, Claims claims) {
+    String sessionId = claims.get("sessionId", String.class);
+    if (sessionId == null) {
+      return Optional.empty();
+    }
+
+    return userSessionRepository
+        .findBySessionIdAndIsActiveTrue(sessionId)
+        .filter(session -> TokenDigest.matches(refreshToken, session.getRefreshTokenHash()));
   }
 
   private void setAccessTokenCookie(HttpServletResponse response, String accessToken) {
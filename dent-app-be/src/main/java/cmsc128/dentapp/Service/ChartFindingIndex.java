@@ -0,0 +1,187 @@
+package cmsc128.dentapp.Service;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import cmsc128.dentapp.modules.chart.dto.ChartCohortPage;
+import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothFinding;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
+import cmsc128.dentapp.modules.chart.repositories.ChartRepository;
+import cmsc128.dentapp.modules.chart.repositories.ChartToothFindingRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps CHART_TOOTH_FINDING in step with the charts' coded fields and answers cohort queries
+ * ("charts with ICDAS 3 or higher on any molar") from memory. For every finding type, tooth and
+ * code there is one bitmap with a bit set per chart id that has that finding on any surface, so a
+ * query is an OR over the few bitmaps it selects instead of a scan of every chart.
+ *
+ * <p>The bitmaps are loaded from CHART_TOOTH_FINDING at startup. If that table is still empty
+ * while charts exist, every chart is parsed once to fill it.
+ */
+@Component
+@Slf4j
+public class ChartFindingIndex {
+
+  private final ChartRepository chartRepository;
+  private final ChartToothFindingRepository chartToothFindingRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final int chunkSize;
+
+  // findingType -> toothNumber -> code -> chart ids
+  private final Map<FindingType, Map<Integer, Map<String, BitSet>>> bitmaps =
+      new EnumMap<>(FindingType.class);
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  public ChartFindingIndex(
+      ChartRepository chartRepository,
+      ChartToothFindingRepository chartToothFindingRepository,
+      TransactionTemplate transactionTemplate,
+      @Value("${app.chart.findings.load-chunk-size:10000}") int chunkSize) {
+    this.chartRepository = chartRepository;
+    this.chartToothFindingRepository = chartToothFindingRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.chunkSize = chunkSize;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void preload() {
+    if (chartToothFindingRepository.count() == 0 && chartRepository.count() > 0) {
+      backfill();
+      return;
+    }
+
+    long afterId = 0;
+    int loaded = 0;
+    List<Object[]> rows;
+    do {
+      rows = chartToothFindingRepository.findIndexRows(afterId, PageRequest.of(0, chunkSize));
+      lock.writeLock().lock();
+      try {
+        for (Object[] row : rows) {
+          bitmap((FindingType) row[2], (Integer) row[3], (String) row[4])
+              .set(chartBit((Long) row[1]));
+        }
+      } finally {
+        lock.writeLock().unlock();
+      }
+      if (!rows.isEmpty()) {
+        afterId = (Long) rows.get(rows.size() - 1)[0];
+      }
+      loaded += rows.size();
+    } while (rows.size() == chunkSize);
+
+    log.info("Chart finding index loaded with {} findings", loaded);
+  }
+
+  /** Re-parses the chart's coded fields and replaces its findings, in the table and in memory */
+  public void reindex(Chart chart) {
+    List<ChartToothFinding> findings = ChartFindingParser.parse(chart);
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          chartToothFindingRepository.deleteByChartId(chart.getChartID());
+          chartToothFindingRepository.saveAll(findings);
+        });
+
+    int bit = chartBit(chart.getChartID());
+    lock.writeLock().lock();
+    try {
+      bitmaps.values().stream()
+          .flatMap(byTooth -> byTooth.values().stream())
+          .flatMap(byCode -> byCode.values().stream())
+          .forEach(chartIds -> chartIds.clear(bit));
+      for (ChartToothFinding finding : findings) {
+        bitmap(finding.getFindingType(), finding.getToothNumber(), finding.getCode()).set(bit);
+      }
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Charts with a finding of this type on any of {@code teeth} (all teeth if empty) whose code
+   * matches, paged by chart id: up to {@code size} ids greater than {@code afterChartId}.
+   */
+  public ChartCohortPage findCohort(
+      FindingType findingType,
+      Collection<Integer> teeth,
+      Predicate<String> codeMatches,
+      long afterChartId,
+      int size) {
+    BitSet matches = new BitSet();
+    lock.readLock().lock();
+    try {
+      Map<Integer, Map<String, BitSet>> byTooth = bitmaps.getOrDefault(findingType, Map.of());
+      byTooth.forEach(
+          (toothNumber, byCode) -> {
+            if (teeth.isEmpty() || teeth.contains(toothNumber)) {
+              byCode.forEach(
+                  (code, chartIds) -> {
+                    if (codeMatches.test(code)) {
+                      matches.or(chartIds);
+                    }
+                  });
+            }
+          });
+    } finally {
+      lock.readLock().unlock();
+    }
+
+    List<Long> chartIds = new ArrayList<>(size);
+    int from = (int) Math.min(Integer.MAX_VALUE, afterChartId + 1);
+    int next = matches.nextSetBit(from);
+    while (next >= 0 && chartIds.size() < size) {
+      chartIds.add((long) next);
+      next = matches.nextSetBit(next + 1);
+    }
+
+    Long nextAfter = next >= 0 ? chartIds.get(chartIds.size() - 1) : null;
+    return new ChartCohortPage(chartIds, matches.cardinality(), nextAfter);
+  }
+
+  private void backfill() {
+    int page = 0;
+    int indexed = 0;
+    Page<Chart> charts;
+    do {
+      charts = chartRepository.findAll(PageRequest.of(page++, 500, Sort.by("chartID")));
+      for (Chart chart : charts) {
+        reindex(chart);
+        indexed++;
+      }
+    } while (charts.hasNext());
+
+    log.info("Chart finding index backfilled from {} charts", indexed);
+  }
+
+  // Must be called with the write lock held
+  private BitSet bitmap(FindingType findingType, Integer toothNumber, String code) {
+    return bitmaps
+        .computeIfAbsent(findingType, type -> new HashMap<>())
+        .computeIfAbsent(toothNumber, tooth -> new HashMap<>())
+        .computeIfAbsent(code, c -> new BitSet());
+  }
+
+  private static int chartBit(Long chartId) {
+    // Chart ids come from a sequence with allocation size 1, so they stay small and dense
+    return Math.toIntExact(chartId);
+  }
+}
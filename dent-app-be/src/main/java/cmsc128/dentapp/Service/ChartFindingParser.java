@@ -0,0 +1,115 @@
+package cmsc128.dentapp.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothFinding;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
+import cmsc128.dentapp.modules.chart.entities.ToothSurface;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Parses the coded chart fields (treatmentPlans, lesionStatuses, icdasCodes) into per-tooth
+ * findings. Each field is a JSON object keyed by FDI tooth number whose values are either one
+ * code for the whole tooth or an object of surface codes, e.g.
+ *
+ * <pre>{"16": {"top": "3", "center": "5"}, "21": "0"}</pre>
+ *
+ * Blank codes are skipped. Fields in any other format are left as they are and produce no
+ * findings.
+ */
+@Slf4j
+public final class ChartFindingParser {
+
+  private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+  private static final int MAX_CODE_LENGTH = 8;
+
+  private ChartFindingParser() {}
+
+  public static List<ChartToothFinding> parse(Chart chart) {
+    List<ChartToothFinding> findings = new ArrayList<>();
+    parse(chart, FindingType.TREATMENT_PLAN, chart.getTreatmentPlans(), findings);
+    parse(chart, FindingType.LESION_STATUS, chart.getLesionStatuses(), findings);
+    parse(chart, FindingType.ICDAS, chart.getIcdasCodes(), findings);
+    return findings;
+  }
+
+  /** Returns the FDI tooth number (11-48, or 51-85 for primary teeth), or null if invalid */
+  public static Integer toothNumber(String value) {
+    try {
+      int toothNumber = Integer.parseInt(value.trim());
+      int quadrant = toothNumber / 10;
+      int position = toothNumber % 10;
+      boolean permanent = quadrant >= 1 && quadrant <= 4 && position >= 1 && position <= 8;
+      boolean primary = quadrant >= 5 && quadrant <= 8 && position >= 1 && position <= 5;
+      return permanent || primary ? toothNumber : null;
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static void parse(
+      Chart chart, FindingType findingType, String value, List<ChartToothFinding> findings) {
+    if (value == null || value.isBlank()) {
+      return;
+    }
+
+    JsonNode root;
+    try {
+      root = OBJECT_MAPPER.readTree(value);
+    } catch (JsonProcessingException e) {
+      log.debug("{} of chart {} is not JSON, not indexed", findingType, chart.getChartID());
+      return;
+    }
+    if (root == null || !root.isObject()) {
+      log.debug(
+          "{} of chart {} is not a JSON object, not indexed", findingType, chart.getChartID());
+      return;
+    }
+
+    root.fields()
+        .forEachRemaining(
+            tooth -> {
+              Integer toothNumber = toothNumber(tooth.getKey());
+              if (toothNumber == null) {
+                return;
+              }
+
+              JsonNode codes = tooth.getValue();
+              if (!codes.isObject()) {
+                add(findings, chart, findingType, toothNumber, ToothSurface.WHOLE, codes);
+                return;
+              }
+              for (ToothSurface surface : ToothSurface.values()) {
+                if (surface != ToothSurface.WHOLE) {
+                  JsonNode code = codes.get(surface.name().toLowerCase(Locale.ROOT));
+                  add(findings, chart, findingType, toothNumber, surface, code);
+                }
+              }
+            });
+  }
+
+  private static void add(
+      List<ChartToothFinding> findings,
+      Chart chart,
+      FindingType findingType,
+      Integer toothNumber,
+      ToothSurface surface,
+      JsonNode code) {
+    if (code == null || !code.isValueNode() || code.isNull()) {
+      return;
+    }
+
+    String text = code.asText().trim();
+    if (!text.isEmpty() && text.length() <= MAX_CODE_LENGTH) {
+      findings.add(new ChartToothFinding(chart, findingType, toothNumber, surface, text));
+    }
+  }
+}
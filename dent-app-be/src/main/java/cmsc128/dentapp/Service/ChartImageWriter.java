@@ -0,0 +1,215 @@
+package cmsc128.dentapp.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import cmsc128.dentapp.modules.storage.services.ContentAddressedStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Writes the tooth images of a chart concurrently on a fixed-size pool. The chart directory is
+ * created once up front, then every image is written in parallel and the caller waits for all of
+ * them. If any write fails, the images already written are deleted so no orphan files are left.
+ *
+ * <p>In content-addressed mode identical images of a chart (usually blank teeth) are grouped and
+ * stored once, with one reference per tooth.
+ */
+@Component
+public class ChartImageWriter {
+
+  private final FileStorageService fileStorageService;
+  private final ContentAddressedStore contentAddressedStore;
+  private final ExecutorService executor;
+  private final Timer writeTimer;
+
+  public ChartImageWriter(
+      FileStorageService fileStorageService,
+      ContentAddressedStore contentAddressedStore,
+      MeterRegistry meterRegistry,
+      @Value("${app.chart.image-writer.threads:8}") int threads) {
+    this.fileStorageService = fileStorageService;
+    this.contentAddressedStore = contentAddressedStore;
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor =
+        Executors.newFixedThreadPool(
+            threads,
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "chart-image-writer-" + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    this.writeTimer =
+        Timer.builder("dentapp.chart.image.write")
+            .description("Time to write a single chart image to disk")
+            .register(meterRegistry);
+  }
+
+  /**
+   * Writes every image and returns the relative paths, keyed like {@code images} (image name to
+   * bytes). Throws IOException after cleaning up if any write fails.
+   */
+  public Map<String, String> writeAll(long patientId, Map<String, byte[]> images)
+      throws IOException {
+    if (images.isEmpty()) {
+      return new LinkedHashMap<>();
+    }
+
+    if (fileStorageService.isContentAddressed()) {
+      return writeDeduplicated(images);
+    }
+
+    fileStorageService.createChartDirectory(patientId);
+
+    Map<String, Future<String>> writes = new LinkedHashMap<>();
+    images.forEach(
+        (imageName, imageData) ->
+            writes.put(
+                imageName,
+                submitTimed(
+                    () -> fileStorageService.writeChartImage(patientId, imageName, imageData))));
+
+    return awaitAll(writes, written -> deleteAll(written.values()));
+  }
+
+  /**
+   * Like {@link #writeAll}, but copies each uploaded file from its stream so the image is never
+   * held in memory as a whole.
+   */
+  public Map<String, String> writeAllStreams(long patientId, Map<String, MultipartFile> images)
+      throws IOException {
+    if (images.isEmpty()) {
+      return new LinkedHashMap<>();
+    }
+
+    if (!fileStorageService.isContentAddressed()) {
+      fileStorageService.createChartDirectory(patientId);
+    }
+
+    Map<String, Future<String>> writes = new LinkedHashMap<>();
+    images.forEach(
+        (imageName, image) ->
+            writes.put(
+                imageName,
+                submitTimed(
+                    () -> {
+                      try (InputStream imageStream = image.getInputStream()) {
+                        return fileStorageService.writeChartImage(
+                            patientId, imageName, imageStream);
+                      }
+                    })));
+
+    return awaitAll(writes, written -> deleteAll(written.values()));
+  }
+
+  /** Deletes images written by {@link #writeAll}, e.g. when the chart itself cannot be saved */
+  public void deleteAll(Collection<String> paths) {
+    paths.forEach(fileStorageService::deleteFile);
+  }
+
+  private Map<String, String> writeDeduplicated(Map<String, byte[]> images) throws IOException {
+    Map<String, List<String>> imageNamesByHash = new LinkedHashMap<>();
+    Map<String, byte[]> imagesByHash = new LinkedHashMap<>();
+    images.forEach(
+        (imageName, imageData) -> {
+          String hash = ContentAddressedStore.hash(imageData);
+          imageNamesByHash.computeIfAbsent(hash, h -> new ArrayList<>()).add(imageName);
+          imagesByHash.putIfAbsent(hash, imageData);
+        });
+
+    Map<String, Future<String>> stores = new LinkedHashMap<>();
+    imagesByHash.forEach(
+        (hash, imageData) -> {
+          int references = imageNamesByHash.get(hash).size();
+          stores.put(hash, submitTimed(() -> contentAddressedStore.store(imageData, references)));
+        });
+
+    // On failure, release as many references as each blob was given
+    Map<String, String> pathsByHash =
+        awaitAll(
+            stores,
+            stored ->
+                stored.forEach(
+                    (hash, path) ->
+                        contentAddressedStore.release(path, imageNamesByHash.get(hash).size())));
+
+    Map<String, String> paths = new LinkedHashMap<>();
+    pathsByHash.forEach(
+        (hash, path) ->
+            imageNamesByHash.get(hash).forEach(imageName -> paths.put(imageName, path)));
+    return paths;
+  }
+
+  private Future<String> submitTimed(Callable<String> write) {
+    return executor.submit(
+        () -> {
+          long start = System.nanoTime();
+          try {
+            return write.call();
+          } finally {
+            writeTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+          }
+        });
+  }
+
+  /**
+   * Waits for every write and returns the results by key. If any write failed, hands the
+   * successful ones to {@code cleanup} and rethrows the first failure.
+   */
+  private Map<String, String> awaitAll(
+      Map<String, Future<String>> writes, Consumer<Map<String, String>> cleanup)
+      throws IOException {
+    Map<String, String> written = new LinkedHashMap<>();
+    Throwable failure = null;
+    for (Map.Entry<String, Future<String>> write : writes.entrySet()) {
+      try {
+        written.put(write.getKey(), write.getValue().get());
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        writes.values().forEach(pending -> pending.cancel(true));
+        failure = e;
+        break;
+      }
+    }
+
+    if (failure != null) {
+      cleanup.accept(written);
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      }
+      throw new IOException("Failed to write chart images", failure);
+    }
+
+    return written;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -1,316 +1,180 @@
 package cmsc128.dentapp.Service;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.multipart.MultipartFile;
 
 import cmsc128.dentapp.modules.chart.dto.AddChartDTO;
+import cmsc128.dentapp.modules.chart.dto.ChartCohortPage;
+import cmsc128.dentapp.modules.chart.dto.ChartHistoryPage;
+import cmsc128.dentapp.modules.chart.dto.ChartSummaryDTO;
+import cmsc128.dentapp.modules.chart.dto.PatchChartDTO;
 import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothImage;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
+import cmsc128.dentapp.modules.chart.entities.ToothImageSlot;
 import cmsc128.dentapp.modules.chart.repositories.ChartRepository;
+import cmsc128.dentapp.modules.chart.repositories.ChartToothImageRepository;
+import cmsc128.dentapp.modules.chart.services.ChartNotFoundException;
 import cmsc128.dentapp.modules.chart.services.ChartService;
+import cmsc128.dentapp.modules.patient.entities.Patient;
 import cmsc128.dentapp.modules.patient.services.PatientService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 
 @Service
 public class ChartServiceImpl implements ChartService {
+  private static final int MAX_COHORT_PAGE_SIZE = 1000;
+
+  private static final int MAX_HISTORY_PAGE_SIZE = 100;
+
+  // Charts saved before charts were linked to patients have no PATIENT_ID; their images were
+  // all written under patient_1
+  private static final long UNLINKED_CHART_PATIENT_ID = 1L;
+
   private final ChartRepository chartRepository;
 
   @Qualifier("PatientServiceImpl")
   private final PatientService patientService;
 
+  private final ChartToothImageRepository chartToothImageRepository;
+
+  private final ChartImageWriter chartImageWriter;
+
   private final FileStorageService fileStorageService;
 
+  private final ChartSpriteGenerator chartSpriteGenerator;
+
+  private final ChartFindingIndex chartFindingIndex;
+
+  private final TransactionTemplate transactionTemplate;
+
+  private final Timer imagesStageTimer;
+  private final Timer persistStageTimer;
+
   public ChartServiceImpl(
       ChartRepository chartRepository,
       PatientService patientService,
-      FileStorageService fileStorageService) {
+      ChartToothImageRepository chartToothImageRepository,
+      ChartImageWriter chartImageWriter,
+      FileStorageService fileStorageService,
+      ChartSpriteGenerator chartSpriteGenerator,
+      ChartFindingIndex chartFindingIndex,
+      TransactionTemplate transactionTemplate,
+      MeterRegistry meterRegistry) {
     this.chartRepository = chartRepository;
     this.patientService = patientService;
+    this.chartToothImageRepository = chartToothImageRepository;
+    this.chartImageWriter = chartImageWriter;
     this.fileStorageService = fileStorageService;
+    this.chartSpriteGenerator = chartSpriteGenerator;
+    this.chartFindingIndex = chartFindingIndex;
+    this.transactionTemplate = transactionTemplate;
+
+    this.imagesStageTimer = stageTimer(meterRegistry, "images");
+    this.persistStageTimer = stageTimer(meterRegistry, "persist");
   }
 
   @Override
   public Chart saveChart(AddChartDTO addChartDTO) {
-    try {
-      //            Patient patient =
-      // patientService.findPatientByID(Long.valueOf(addChartDTO.getPatientNumber()));
-      Chart chart = new Chart();
-
-      // Save image files and set paths
-      if (addChartDTO.getTeeth11() != null && addChartDTO.getTeeth11().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth11", addChartDTO.getTeeth11());
-        chart.setTeeth11Path(path);
-      }
-      if (addChartDTO.getTeeth12() != null && addChartDTO.getTeeth12().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth12", addChartDTO.getTeeth12());
-        chart.setTeeth12Path(path);
-      }
-      if (addChartDTO.getTeeth13() != null && addChartDTO.getTeeth13().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth13", addChartDTO.getTeeth13());
-        chart.setTeeth13Path(path);
-      }
-      if (addChartDTO.getTeeth14() != null && addChartDTO.getTeeth14().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth14", addChartDTO.getTeeth14());
-        chart.setTeeth14Path(path);
-      }
-      if (addChartDTO.getTeeth15() != null && addChartDTO.getTeeth15().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth15", addChartDTO.getTeeth15());
-        chart.setTeeth15Path(path);
-      }
-      if (addChartDTO.getTeeth16() != null && addChartDTO.getTeeth16().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth16", addChartDTO.getTeeth16());
-        chart.setTeeth16Path(path);
-      }
-      if (addChartDTO.getTeeth17() != null && addChartDTO.getTeeth17().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth17", addChartDTO.getTeeth17());
-        chart.setTeeth17Path(path);
-      }
-      if (addChartDTO.getTeeth18() != null && addChartDTO.getTeeth18().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth18", addChartDTO.getTeeth18());
-        chart.setTeeth18Path(path);
-      }
+    Patient patient = findPatient(addChartDTO);
+    Chart chart = new Chart();
+    chart.setPatient(patient);
 
-      if (addChartDTO.getTeeth21() != null && addChartDTO.getTeeth21().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth21", addChartDTO.getTeeth21());
-        chart.setTeeth21Path(path);
-      }
-      if (addChartDTO.getTeeth22() != null && addChartDTO.getTeeth22().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth22", addChartDTO.getTeeth22());
-        chart.setTeeth22Path(path);
-      }
-      if (addChartDTO.getTeeth23() != null && addChartDTO.getTeeth23().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth23", addChartDTO.getTeeth23());
-        chart.setTeeth23Path(path);
-      }
-      if (addChartDTO.getTeeth24() != null && addChartDTO.getTeeth24().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth24", addChartDTO.getTeeth24());
-        chart.setTeeth24Path(path);
-      }
-      if (addChartDTO.getTeeth25() != null && addChartDTO.getTeeth25().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth25", addChartDTO.getTeeth25());
-        chart.setTeeth25Path(path);
-      }
-      if (addChartDTO.getTeeth26() != null && addChartDTO.getTeeth26().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth26", addChartDTO.getTeeth26());
-        chart.setTeeth26Path(path);
-      }
-      if (addChartDTO.getTeeth27() != null && addChartDTO.getTeeth27().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth27", addChartDTO.getTeeth27());
-        chart.setTeeth27Path(path);
-      }
-      if (addChartDTO.getTeeth28() != null && addChartDTO.getTeeth28().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth28", addChartDTO.getTeeth28());
-        chart.setTeeth28Path(path);
+    // Collect the tooth images that were sent
+    Map<String, byte[]> images = new LinkedHashMap<>();
+    for (ToothImageSlot slot : ToothImageSlot.ALL) {
+      byte[] image = addChartDTO.getToothImage(slot.getImageName());
+      if (image != null && image.length > 0) {
+        images.put(slot.getImageName(), image);
       }
+    }
 
-      if (addChartDTO.getTeeth31() != null && addChartDTO.getTeeth31().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth31", addChartDTO.getTeeth31());
-        chart.setTeeth31Path(path);
-      }
-      if (addChartDTO.getTeeth32() != null && addChartDTO.getTeeth32().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth32", addChartDTO.getTeeth32());
-        chart.setTeeth32Path(path);
-      }
-      if (addChartDTO.getTeeth33() != null && addChartDTO.getTeeth33().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth33", addChartDTO.getTeeth33());
-        chart.setTeeth33Path(path);
-      }
-      if (addChartDTO.getTeeth34() != null && addChartDTO.getTeeth34().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth34", addChartDTO.getTeeth34());
-        chart.setTeeth34Path(path);
-      }
-      if (addChartDTO.getTeeth35() != null && addChartDTO.getTeeth35().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth35", addChartDTO.getTeeth35());
-        chart.setTeeth35Path(path);
-      }
-      if (addChartDTO.getTeeth36() != null && addChartDTO.getTeeth36().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth36", addChartDTO.getTeeth36());
-        chart.setTeeth36Path(path);
-      }
-      if (addChartDTO.getTeeth37() != null && addChartDTO.getTeeth37().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth37", addChartDTO.getTeeth37());
-        chart.setTeeth37Path(path);
-      }
-      if (addChartDTO.getTeeth38() != null && addChartDTO.getTeeth38().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth38", addChartDTO.getTeeth38());
-        chart.setTeeth38Path(path);
-      }
+    // Save image files in parallel and set paths
+    long start = System.nanoTime();
+    Map<String, String> paths;
+    try {
+      paths = chartImageWriter.writeAll(patient.getPatientID(), images);
+    } catch (IOException e) {
+      throw new RuntimeException("Error saving chart images: " + e.getMessage(), e);
+    }
+    imagesStageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
-      if (addChartDTO.getTeeth41() != null && addChartDTO.getTeeth41().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth41", addChartDTO.getTeeth41());
-        chart.setTeeth41Path(path);
-      }
-      if (addChartDTO.getTeeth42() != null && addChartDTO.getTeeth42().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth42", addChartDTO.getTeeth42());
-        chart.setTeeth42Path(path);
-      }
-      if (addChartDTO.getTeeth43() != null && addChartDTO.getTeeth43().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth43", addChartDTO.getTeeth43());
-        chart.setTeeth43Path(path);
-      }
-      if (addChartDTO.getTeeth44() != null && addChartDTO.getTeeth44().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth44", addChartDTO.getTeeth44());
-        chart.setTeeth44Path(path);
-      }
-      if (addChartDTO.getTeeth45() != null && addChartDTO.getTeeth45().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth45", addChartDTO.getTeeth45());
-        chart.setTeeth45Path(path);
-      }
-      if (addChartDTO.getTeeth46() != null && addChartDTO.getTeeth46().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth46", addChartDTO.getTeeth46());
-        chart.setTeeth46Path(path);
-      }
-      if (addChartDTO.getTeeth47() != null && addChartDTO.getTeeth47().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth47", addChartDTO.getTeeth47());
-        chart.setTeeth47Path(path);
-      }
-      if (addChartDTO.getTeeth48() != null && addChartDTO.getTeeth48().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "teeth48", addChartDTO.getTeeth48());
-        chart.setTeeth48Path(path);
-      }
+    return saveChart(chart, addChartDTO, paths);
+  }
 
-      // Save EC images
-      if (addChartDTO.getEC11() != null && addChartDTO.getEC11().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC11", addChartDTO.getEC11());
-        chart.setEC11Path(path);
-      }
-      if (addChartDTO.getEC12() != null && addChartDTO.getEC12().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC12", addChartDTO.getEC12());
-        chart.setEC12Path(path);
-      }
-      if (addChartDTO.getEC13() != null && addChartDTO.getEC13().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC13", addChartDTO.getEC13());
-        chart.setEC13Path(path);
-      }
-      if (addChartDTO.getEC14() != null && addChartDTO.getEC14().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC14", addChartDTO.getEC14());
-        chart.setEC14Path(path);
-      }
-      if (addChartDTO.getEC15() != null && addChartDTO.getEC15().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC15", addChartDTO.getEC15());
-        chart.setEC15Path(path);
-      }
-      if (addChartDTO.getEC16() != null && addChartDTO.getEC16().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC16", addChartDTO.getEC16());
-        chart.setEC16Path(path);
-      }
-      if (addChartDTO.getEC17() != null && addChartDTO.getEC17().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC17", addChartDTO.getEC17());
-        chart.setEC17Path(path);
-      }
-      if (addChartDTO.getEC18() != null && addChartDTO.getEC18().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC18", addChartDTO.getEC18());
-        chart.setEC18Path(path);
-      }
+  @Override
+  public Chart saveChart(AddChartDTO addChartDTO, Map<String, MultipartFile> images) {
+    if (addChartDTO == null) {
+      addChartDTO = new AddChartDTO();
+    }
+    Patient patient = findPatient(addChartDTO);
+    Chart chart = new Chart();
+    chart.setPatient(patient);
 
-      if (addChartDTO.getEC21() != null && addChartDTO.getEC21().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC21", addChartDTO.getEC21());
-        chart.setEC21Path(path);
-      }
-      if (addChartDTO.getEC22() != null && addChartDTO.getEC22().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC22", addChartDTO.getEC22());
-        chart.setEC22Path(path);
-      }
-      if (addChartDTO.getEC23() != null && addChartDTO.getEC23().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC23", addChartDTO.getEC23());
-        chart.setEC23Path(path);
-      }
-      if (addChartDTO.getEC24() != null && addChartDTO.getEC24().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC24", addChartDTO.getEC24());
-        chart.setEC24Path(path);
-      }
-      if (addChartDTO.getEC25() != null && addChartDTO.getEC25().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC25", addChartDTO.getEC25());
-        chart.setEC25Path(path);
-      }
-      if (addChartDTO.getEC26() != null && addChartDTO.getEC26().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC26", addChartDTO.getEC26());
-        chart.setEC26Path(path);
-      }
-      if (addChartDTO.getEC27() != null && addChartDTO.getEC27().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC27", addChartDTO.getEC27());
-        chart.setEC27Path(path);
-      }
-      if (addChartDTO.getEC28() != null && addChartDTO.getEC28().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC28", addChartDTO.getEC28());
-        chart.setEC28Path(path);
+    // Only parts named after a tooth image slot are stored
+    Map<String, MultipartFile> toothImages = new LinkedHashMap<>();
+    for (ToothImageSlot slot : ToothImageSlot.ALL) {
+      MultipartFile image = images.get(slot.getImageName());
+      if (image != null && !image.isEmpty()) {
+        toothImages.put(slot.getImageName(), image);
       }
+    }
 
-      if (addChartDTO.getEC31() != null && addChartDTO.getEC31().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC31", addChartDTO.getEC31());
-        chart.setEC31Path(path);
-      }
-      if (addChartDTO.getEC32() != null && addChartDTO.getEC32().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC32", addChartDTO.getEC32());
-        chart.setEC32Path(path);
-      }
-      if (addChartDTO.getEC33() != null && addChartDTO.getEC33().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC33", addChartDTO.getEC33());
-        chart.setEC33Path(path);
-      }
-      if (addChartDTO.getEC34() != null && addChartDTO.getEC34().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC34", addChartDTO.getEC34());
-        chart.setEC34Path(path);
-      }
-      if (addChartDTO.getEC35() != null && addChartDTO.getEC35().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC35", addChartDTO.getEC35());
-        chart.setEC35Path(path);
-      }
-      if (addChartDTO.getEC36() != null && addChartDTO.getEC36().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC36", addChartDTO.getEC36());
-        chart.setEC36Path(path);
-      }
-      if (addChartDTO.getEC37() != null && addChartDTO.getEC37().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC37", addChartDTO.getEC37());
-        chart.setEC37Path(path);
-      }
-      if (addChartDTO.getEC38() != null && addChartDTO.getEC38().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC38", addChartDTO.getEC38());
-        chart.setEC38Path(path);
-      }
+    // Copy each part from the upload stream to disk in parallel
+    long start = System.nanoTime();
+    Map<String, String> paths;
+    try {
+      paths = chartImageWriter.writeAllStreams(patient.getPatientID(), toothImages);
+    } catch (IOException e) {
+      throw new RuntimeException("Error saving chart images: " + e.getMessage(), e);
+    }
+    imagesStageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
 
-      if (addChartDTO.getEC41() != null && addChartDTO.getEC41().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC41", addChartDTO.getEC41());
-        chart.setEC41Path(path);
-      }
-      if (addChartDTO.getEC42() != null && addChartDTO.getEC42().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC42", addChartDTO.getEC42());
-        chart.setEC42Path(path);
-      }
-      if (addChartDTO.getEC43() != null && addChartDTO.getEC43().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC43", addChartDTO.getEC43());
-        chart.setEC43Path(path);
-      }
-      if (addChartDTO.getEC44() != null && addChartDTO.getEC44().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC44", addChartDTO.getEC44());
-        chart.setEC44Path(path);
-      }
-      if (addChartDTO.getEC45() != null && addChartDTO.getEC45().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC45", addChartDTO.getEC45());
-        chart.setEC45Path(path);
-      }
-      if (addChartDTO.getEC46() != null && addChartDTO.getEC46().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC46", addChartDTO.getEC46());
-        chart.setEC46Path(path);
-      }
-      if (addChartDTO.getEC47() != null && addChartDTO.getEC47().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC47", addChartDTO.getEC47());
-        chart.setEC47Path(path);
-      }
-      if (addChartDTO.getEC48() != null && addChartDTO.getEC48().length > 0) {
-        String path = fileStorageService.saveChartImage(1, "EC48", addChartDTO.getEC48());
-        chart.setEC48Path(path);
+    return saveChart(chart, addChartDTO, paths);
+  }
+
+  private Chart saveChart(Chart chart, AddChartDTO addChartDTO, Map<String, String> paths) {
+    for (ToothImageSlot slot : ToothImageSlot.ALL) {
+      String path = paths.get(slot.getImageName());
+      if (path != null) {
+        chart.putToothImage(slot.getSurfaceKind(), slot.getToothNumber(), path);
       }
+    }
 
-      chart.setTreatmentPlans(addChartDTO.getTreatmentPlans());
-      chart.setLesionStatuses(addChartDTO.getLesionStatuses());
-      chart.setIcdasCodes(addChartDTO.getIcdasCodes());
+    chart.setTreatmentPlans(addChartDTO.getTreatmentPlans());
+    chart.setLesionStatuses(addChartDTO.getLesionStatuses());
+    chart.setIcdasCodes(addChartDTO.getIcdasCodes());
 
-      //            chart.setPatient(patient);
-      return this.chartRepository.save(chart);
-    } catch (IOException e) {
-      throw new RuntimeException("Error saving chart images: " + e.getMessage(), e);
+    long start = System.nanoTime();
+    Chart savedChart;
+    try {
+      savedChart = this.chartRepository.save(chart);
+    } catch (RuntimeException e) {
+      chartImageWriter.deleteAll(paths.values());
+      throw e;
+    } finally {
+      persistStageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
     }
+
+    chartFindingIndex.reindex(savedChart);
+    chartSpriteGenerator.scheduleGeneration(
+        savedChart.getChartID(), chart.getPatient().getPatientID(), paths);
+    return savedChart;
   }
 
   @Override
@@ -318,8 +182,321 @@ public class ChartServiceImpl implements ChartService {
     return this.chartRepository.findByChartID(chartID);
   }
 
-  //    @Override
-  //    public Chart findByPatientID(Long patientID) {
-  //        return this.chartRepository.findByPatient_PatientID(patientID);
-  //    }
+  @Override
+  public ChartToothImage findToothImage(Long chartID, String imageName) {
+    ToothImageSlot slot = requireSlot(imageName);
+    return chartToothImageRepository
+        .findToothImage(chartID, slot.getSurfaceKind(), slot.getToothNumber())
+        .orElseThrow(
+            () -> new ChartNotFoundException("No " + imageName + " image for chart " + chartID));
+  }
+
+  @Override
+  public ChartToothImage replaceToothImage(
+      Long chartID, String imageName, byte[] image, Long version) {
+    ToothImageSlot slot = requireSlot(imageName);
+    if (image == null || image.length == 0) {
+      throw new IllegalArgumentException("Image cannot be empty");
+    }
+    if (version == null) {
+      throw new IllegalArgumentException("version is required");
+    }
+
+    // Reject stale edits before the image is written
+    Chart current = chartRepository.findByChartID(chartID);
+    if (current == null) {
+      throw new ChartNotFoundException("Chart not found with ID: " + chartID);
+    }
+    if (!version.equals(current.getVersion())) {
+      throw new ObjectOptimisticLockingFailureException(Chart.class, chartID);
+    }
+    long patientID = imagePatientID(current);
+
+    String path;
+    try {
+      path = fileStorageService.saveChartImage(patientID, imageName, image);
+    } catch (IOException e) {
+      throw new RuntimeException("Error saving chart image: " + e.getMessage(), e);
+    }
+
+    // Only this tooth's row is read and written; the chart's version is checked again and
+    // bumped when the transaction commits, like a PATCH
+    String[] previousPath = new String[1];
+    ChartToothImage toothImage;
+    try {
+      toothImage =
+          transactionTemplate.execute(
+              status -> {
+                Chart chart =
+                    chartRepository
+                        .findForUpdate(chartID)
+                        .orElseThrow(
+                            () ->
+                                new ChartNotFoundException("Chart not found with ID: " + chartID));
+                if (!version.equals(chart.getVersion())) {
+                  throw new ObjectOptimisticLockingFailureException(Chart.class, chartID);
+                }
+
+                ChartToothImage row =
+                    chartToothImageRepository
+                        .findToothImage(chartID, slot.getSurfaceKind(), slot.getToothNumber())
+                        .orElseGet(
+                            () ->
+                                new ChartToothImage(
+                                    chart, slot.getSurfaceKind(), slot.getToothNumber(), null));
+                previousPath[0] = row.getImagePath();
+                row.setImagePath(path);
+                return chartToothImageRepository.save(row);
+              });
+    } catch (RuntimeException e) {
+      fileStorageService.deleteFile(path);
+      throw e;
+    }
+
+    if (previousPath[0] != null) {
+      fileStorageService.deleteFile(previousPath[0]);
+    }
+
+    // Rebuild the sprite from the chart's current images
+    chartSpriteGenerator.scheduleGeneration(chartID, patientID, currentImagePaths(chartID));
+
+    return toothImage;
+  }
+
+  @Override
+  public Chart patchChart(Long chartID, PatchChartDTO patchChartDTO) {
+    Long version = patchChartDTO.getVersion();
+    if (version == null) {
+      throw new IllegalArgumentException("version is required");
+    }
+
+    // Reject stale edits before any image is written
+    Chart current = chartRepository.findByChartID(chartID);
+    if (current == null) {
+      throw new ChartNotFoundException("Chart not found with ID: " + chartID);
+    }
+    if (!version.equals(current.getVersion())) {
+      throw new ObjectOptimisticLockingFailureException(Chart.class, chartID);
+    }
+    long patientID = imagePatientID(current);
+
+    long start = System.nanoTime();
+    Map<String, String> paths;
+    try {
+      paths = chartImageWriter.writeAll(patientID, patchChartDTO.getToothImages());
+    } catch (IOException e) {
+      throw new RuntimeException("Error saving chart images: " + e.getMessage(), e);
+    }
+    imagesStageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+    // The version is checked again and bumped when the transaction commits
+    List<String> supersededPaths = new ArrayList<>();
+    start = System.nanoTime();
+    Chart savedChart;
+    try {
+      savedChart =
+          transactionTemplate.execute(
+              status -> {
+                Chart chart =
+                    chartRepository
+                        .findForUpdate(chartID)
+                        .orElseThrow(
+                            () ->
+                                new ChartNotFoundException("Chart not found with ID: " + chartID));
+                if (!version.equals(chart.getVersion())) {
+                  throw new ObjectOptimisticLockingFailureException(Chart.class, chartID);
+                }
+
+                paths.forEach(
+                    (imageName, path) -> {
+                      ToothImageSlot slot = ToothImageSlot.fromImageName(imageName);
+                      ChartToothImage toothImage =
+                          chart.putToothImage(slot.getSurfaceKind(), slot.getToothNumber(), null);
+                      if (toothImage.getImagePath() != null) {
+                        supersededPaths.add(toothImage.getImagePath());
+                      }
+                      toothImage.setImagePath(path);
+                    });
+
+                if (patchChartDTO.getTreatmentPlans() != null) {
+                  chart.setTreatmentPlans(patchChartDTO.getTreatmentPlans());
+                }
+                if (patchChartDTO.getLesionStatuses() != null) {
+                  chart.setLesionStatuses(patchChartDTO.getLesionStatuses());
+                }
+                if (patchChartDTO.getIcdasCodes() != null) {
+                  chart.setIcdasCodes(patchChartDTO.getIcdasCodes());
+                }
+                return chart;
+              });
+    } catch (RuntimeException e) {
+      chartImageWriter.deleteAll(paths.values());
+      throw e;
+    } finally {
+      persistStageTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    chartImageWriter.deleteAll(supersededPaths);
+    if (patchChartDTO.getTreatmentPlans() != null
+        || patchChartDTO.getLesionStatuses() != null
+        || patchChartDTO.getIcdasCodes() != null) {
+      chartFindingIndex.reindex(savedChart);
+    }
+    if (!paths.isEmpty()) {
+      chartSpriteGenerator.scheduleGeneration(chartID, patientID, currentImagePaths(chartID));
+    }
+    return savedChart;
+  }
+
+  @Override
+  public ChartCohortPage findCohort(
+      FindingType findingType, String teeth, String codes, Integer minCode, long after, int size) {
+    if (findingType == null) {
+      throw new IllegalArgumentException("type is required");
+    }
+    if (size < 1 || size > MAX_COHORT_PAGE_SIZE) {
+      throw new IllegalArgumentException("size must be between 1 and " + MAX_COHORT_PAGE_SIZE);
+    }
+    if (after < 0) {
+      throw new IllegalArgumentException("after must not be negative");
+    }
+
+    Predicate<String> codeMatches = code -> true;
+    if (codes != null && !codes.isBlank()) {
+      Set<String> wanted = new HashSet<>();
+      for (String code : codes.split(",")) {
+        wanted.add(code.trim());
+      }
+      codeMatches = wanted::contains;
+    } else if (minCode != null) {
+      // Only numeric codes (e.g. ICDAS 0-6) can be compared
+      codeMatches =
+          code -> code.chars().allMatch(Character::isDigit) && Integer.parseInt(code) >= minCode;
+    }
+
+    return chartFindingIndex.findCohort(findingType, parseTeeth(teeth), codeMatches, after, size);
+  }
+
+  /** Expands "16,26", "molars" etc. into FDI tooth numbers of the permanent dentition */
+  static Set<Integer> parseTeeth(String teeth) {
+    Set<Integer> toothNumbers = new HashSet<>();
+    if (teeth == null || teeth.isBlank()) {
+      return toothNumbers;
+    }
+
+    for (String token : teeth.split(",")) {
+      String name = token.trim().toLowerCase(Locale.ROOT);
+      int[] positions;
+      switch (name) {
+        case "molars" -> positions = new int[] {6, 7, 8};
+        case "premolars" -> positions = new int[] {4, 5};
+        case "canines" -> positions = new int[] {3};
+        case "incisors" -> positions = new int[] {1, 2};
+        default -> {
+          Integer toothNumber = ChartFindingParser.toothNumber(name);
+          if (toothNumber == null) {
+            throw new IllegalArgumentException("Unknown tooth: " + token);
+          }
+          toothNumbers.add(toothNumber);
+          continue;
+        }
+      }
+      for (int quadrant = 1; quadrant <= 4; quadrant++) {
+        for (int position : positions) {
+          toothNumbers.add(quadrant * 10 + position);
+        }
+      }
+    }
+    return toothNumbers;
+  }
+
+  /** The chart's current tooth image paths keyed by image name */
+  private Map<String, String> currentImagePaths(Long chartID) {
+    Map<String, String> paths = new LinkedHashMap<>();
+    for (ChartToothImage current : chartToothImageRepository.findByChartId(chartID)) {
+      ToothImageSlot currentSlot =
+          ToothImageSlot.of(current.getSurfaceKind(), current.getToothNumber());
+      if (currentSlot != null) {
+        paths.put(currentSlot.getImageName(), current.getImagePath());
+      }
+    }
+    return paths;
+  }
+
+  @Override
+  public Chart findByPatientID(Long patientID) {
+    return this.chartRepository.findTopByPatient_PatientIDOrderByChartIDDesc(patientID);
+  }
+
+  @Override
+  public ChartHistoryPage findChartHistory(Long patientID, Long before, int size) {
+    if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+      throw new IllegalArgumentException("size must be between 1 and " + MAX_HISTORY_PAGE_SIZE);
+    }
+
+    // Fetch one extra row to know whether there is a next page
+    List<ChartSummaryDTO> charts =
+        new ArrayList<>(
+            chartRepository.findChartSummaries(
+                patientID, before != null ? before : Long.MAX_VALUE, PageRequest.of(0, size + 1)));
+    Long nextBefore = null;
+    if (charts.size() > size) {
+      charts.remove(size);
+      nextBefore = charts.get(size - 1).getChartID();
+    }
+    return new ChartHistoryPage(charts, nextBefore);
+  }
+
+  /**
+   * The patient a new chart belongs to, found by patientId or, when no id is sent, by the patient
+   * number printed on the record. The two are never tried in place of each other, since a patient
+   * number can equal another patient's id.
+   */
+  private Patient findPatient(AddChartDTO addChartDTO) {
+    Long patientId = addChartDTO.getPatientId();
+    String patientNumber = addChartDTO.getPatientNumber();
+
+    Patient patient;
+    if (patientId != null) {
+      patient = patientService.findPatientByID(patientId);
+      if (patient != null
+          && patientNumber != null
+          && !patientNumber.isBlank()
+          && !patientNumber.trim().equals(patient.getPatientNumber())) {
+        throw new IllegalArgumentException(
+            "patientNumber " + patientNumber + " does not belong to patient " + patientId);
+      }
+    } else if (patientNumber != null && !patientNumber.isBlank()) {
+      patient = patientService.findByPatientNumber(patientNumber.trim());
+    } else {
+      throw new IllegalArgumentException("patientId or patientNumber is required");
+    }
+    if (patient == null) {
+      throw new IllegalArgumentException(
+          "Patient not found: " + (patientId != null ? patientId : patientNumber));
+    }
+    return patient;
+  }
+
+  /** The patient whose patient_N folder holds the chart's images */
+  private static long imagePatientID(Chart chart) {
+    return chart.getPatient() != null
+        ? chart.getPatient().getPatientID()
+        : UNLINKED_CHART_PATIENT_ID;
+  }
+
+  private static ToothImageSlot requireSlot(String imageName) {
+    ToothImageSlot slot = ToothImageSlot.fromImageName(imageName);
+    if (slot == null) {
+      throw new IllegalArgumentException("Unknown tooth image: " + imageName);
+    }
+    return slot;
+  }
+
+  private static Timer stageTimer(MeterRegistry meterRegistry, String stage) {
+    return Timer.builder("dentapp.chart.save.stage")
+        .description("Time spent in each stage of saving a chart")
+        .tag("stage", stage)
+        .register(meterRegistry);
+  }
 }
@@ -0,0 +1,182 @@
+package cmsc128.dentapp.Service;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartSprite;
+import cmsc128.dentapp.modules.chart.entities.ToothImageSlot;
+import cmsc128.dentapp.modules.chart.repositories.ChartRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Composes the tooth images of a saved chart into one sprite sheet and a small thumbnail, so a
+ * chart can be displayed with one or two image requests instead of up to 64. Runs on a single
+ * background thread after the chart is saved; until it finishes the chart has no sprite and
+ * clients fall back to the individual images.
+ */
+@Component
+@Slf4j
+public class ChartSpriteGenerator {
+
+  // 16 tiles per row: one row per arch, first the tooth drawings then the EC drawings
+  private static final int COLUMNS = 16;
+
+  private final ChartRepository chartRepository;
+  private final FileStorageService fileStorageService;
+  private final boolean enabled;
+  private final int thumbnailWidth;
+  private final ExecutorService executor;
+  private final Timer generateTimer;
+
+  public ChartSpriteGenerator(
+      ChartRepository chartRepository,
+      FileStorageService fileStorageService,
+      MeterRegistry meterRegistry,
+      @Value("${app.chart.sprite.enabled:true}") boolean enabled,
+      @Value("${app.chart.sprite.thumbnail-width:256}") int thumbnailWidth) {
+    this.chartRepository = chartRepository;
+    this.fileStorageService = fileStorageService;
+    this.enabled = enabled;
+    this.thumbnailWidth = thumbnailWidth;
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "chart-sprite-generator");
+              thread.setDaemon(true);
+              return thread;
+            });
+    this.generateTimer =
+        Timer.builder("dentapp.chart.sprite.generate")
+            .description("Time to compose and store a chart sprite and thumbnail")
+            .register(meterRegistry);
+  }
+
+  /** Queues (re)generation of the chart's sprite from its tooth image paths, keyed by name */
+  public void scheduleGeneration(long chartId, long patientId, Map<String, String> imagePaths) {
+    if (!enabled || imagePaths.isEmpty()) {
+      return;
+    }
+    Map<String, String> paths = new LinkedHashMap<>(imagePaths);
+    executor.execute(() -> generate(chartId, patientId, paths));
+  }
+
+  private void generate(long chartId, long patientId, Map<String, String> imagePaths) {
+    long start = System.nanoTime();
+    try {
+      Map<ToothImageSlot, BufferedImage> images = new LinkedHashMap<>();
+      int cellWidth = 0;
+      int cellHeight = 0;
+      for (Map.Entry<String, String> imagePath : imagePaths.entrySet()) {
+        ToothImageSlot slot = ToothImageSlot.fromImageName(imagePath.getKey());
+        if (slot == null) {
+          continue;
+        }
+
+        BufferedImage image;
+        try (InputStream imageStream = fileStorageService.openFile(imagePath.getValue())) {
+          image = ImageIO.read(imageStream);
+        }
+        if (image == null) {
+          log.warn("Skipping unreadable image {} in sprite of chart {}", imagePath, chartId);
+          continue;
+        }
+
+        images.put(slot, image);
+        cellWidth = Math.max(cellWidth, image.getWidth());
+        cellHeight = Math.max(cellHeight, image.getHeight());
+      }
+
+      if (images.isEmpty()) {
+        return;
+      }
+
+      ChartSprite layout = new ChartSprite();
+      layout.setCellWidth(cellWidth);
+      layout.setCellHeight(cellHeight);
+      layout.setColumns(COLUMNS);
+
+      int rows = (ToothImageSlot.ALL.size() + COLUMNS - 1) / COLUMNS;
+      BufferedImage sheet =
+          new BufferedImage(COLUMNS * cellWidth, rows * cellHeight, BufferedImage.TYPE_INT_ARGB);
+      Graphics2D graphics = sheet.createGraphics();
+      try {
+        for (Map.Entry<ToothImageSlot, BufferedImage> image : images.entrySet()) {
+          int[] origin = layout.tileOrigin(image.getKey());
+          graphics.drawImage(image.getValue(), origin[0], origin[1], null);
+        }
+      } finally {
+        graphics.dispose();
+      }
+
+      String spritePath = fileStorageService.saveChartImage(patientId, "sprite", toPng(sheet));
+      String thumbnailPath =
+          fileStorageService.saveChartImage(patientId, "thumbnail", toPng(thumbnail(sheet)));
+
+      Chart chart = chartRepository.findByChartID(chartId);
+      if (chart == null) {
+        // The chart was deleted in the meantime
+        fileStorageService.deleteFile(spritePath);
+        fileStorageService.deleteFile(thumbnailPath);
+        return;
+      }
+
+      ChartSprite previous = chart.getSprite();
+      chartRepository.updateSprite(
+          chartId, spritePath, thumbnailPath, cellWidth, cellHeight, COLUMNS);
+
+      if (previous != null && previous.getPath() != null) {
+        fileStorageService.deleteFile(previous.getPath());
+        fileStorageService.deleteFile(previous.getThumbnailPath());
+      }
+    } catch (Exception e) {
+      log.warn("Could not generate sprite for chart {}: {}", chartId, e.getMessage());
+    } finally {
+      generateTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  private BufferedImage thumbnail(BufferedImage sheet) {
+    int width = Math.min(thumbnailWidth, sheet.getWidth());
+    int height = Math.max(1, sheet.getHeight() * width / sheet.getWidth());
+
+    BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D graphics = thumbnail.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(sheet, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return thumbnail;
+  }
+
+  private static byte[] toPng(BufferedImage image) throws IOException {
+    ByteArrayOutputStream png = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", png);
+    return png.toByteArray();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+}
@@ -1,24 +1,49 @@
 package cmsc128.dentapp.Service;
 
 import java.io.IOException;
-import java.nio.file.Files;
+import java.io.InputStream;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.UUID;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
+import cmsc128.dentapp.modules.storage.services.BlobStore;
+import cmsc128.dentapp.modules.storage.services.ContentAddressedStore;
+import cmsc128.dentapp.modules.storage.services.ImageCache;
+import cmsc128.dentapp.modules.storage.services.ImageOptimizer;
+import cmsc128.dentapp.modules.storage.services.UploadPathLayout;
+
 @Service
 public class FileStorageService {
 
   @Value("${app.upload.dir:uploads}")
   private String uploadDir;
 
+  // Store chart images once per unique content instead of once per tooth
+  @Value("${app.upload.content-addressed:false}")
+  private boolean contentAddressed;
+
+  // New files go two hash levels below their folder, see UploadPathLayout
+  @Value("${app.upload.sharded:true}")
+  private boolean sharded;
+
+  @Autowired private ContentAddressedStore contentAddressedStore;
+
+  // Local directory, pack files or a bucket, see BlobStoreConfig
+  @Autowired private BlobStore blobStore;
+
+  // Recently written images are kept in memory for the reads that usually follow
+  @Autowired private ImageCache imageCache;
+
+  // Recompresses saved PNGs and writes WebP derivatives in the background
+  @Autowired private ImageOptimizer imageOptimizer;
+
   public String saveDrawingImage(Long patientId, String imageType, MultipartFile imageFile)
       throws IOException {
     // Validate file
@@ -32,17 +57,10 @@ public class FileStorageService {
       throw new IllegalArgumentException("File must be an image");
     }
 
-    // Create patient-specific directory
+    // Patient-specific folder
     String patientFolder = "patient_" + patientId;
     String softTissueFolder = "soft_tissue_drawings";
 
-    Path uploadPath = Paths.get(uploadDir, patientFolder, softTissueFolder);
-
-    // Create directories if they don't exist
-    if (!Files.exists(uploadPath)) {
-      Files.createDirectories(uploadPath);
-    }
-
     // Generate unique filename with timestamp
     String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
     String fileName =
@@ -53,82 +71,133 @@ public class FileStorageService {
             + UUID.randomUUID().toString().substring(0, 8)
             + ".png";
 
-    Path filePath = uploadPath.resolve(fileName);
+    String relativePath = layoutPath(patientFolder + "/" + softTissueFolder, fileName);
 
     // Save the file
-    Files.copy(imageFile.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+    try (InputStream imageStream = imageFile.getInputStream()) {
+      blobStore.put(relativePath, imageStream, imageFile.getSize());
+    }
+    if (imageCache.accepts(imageFile.getSize())) {
+      imageCache.put(relativePath, imageFile.getBytes());
+    }
+
+    imageOptimizer.submit(relativePath);
 
     // Return relative path for database storage
-    return patientFolder + "/" + softTissueFolder + "/" + fileName;
+    return relativePath;
   }
 
-  public String saveChartImage(int patientId, String toothNumber, byte[] imageData)
+  public String saveChartImage(long patientId, String toothNumber, byte[] imageData)
       throws IOException {
-    // Create patient-specific directory
+    if (contentAddressed) {
+      String blobPath = contentAddressedStore.store(imageData, 1);
+      imageCache.put(blobPath, imageData);
+      return blobPath;
+    }
+
+    createChartDirectory(patientId);
+    return writeChartImage(patientId, toothNumber, imageData);
+  }
+
+  /** Creates the patient's dental chart directory if it does not exist yet */
+  public void createChartDirectory(long patientId) throws IOException {
+    blobStore.createDirectory("patient_" + patientId + "/dental_charts");
+  }
+
+  /**
+   * Writes a chart image into a directory already created by {@link #createChartDirectory} and
+   * returns its relative path. Safe to call concurrently.
+   */
+  public String writeChartImage(long patientId, String toothNumber, byte[] imageData)
+      throws IOException {
+    if (contentAddressed) {
+      String blobPath = contentAddressedStore.store(imageData, 1);
+      imageCache.put(blobPath, imageData);
+      return blobPath;
+    }
+
     String patientFolder = "patient_" + patientId;
     String chartsFolder = "dental_charts";
 
-    Path uploadPath = Paths.get(uploadDir, patientFolder, chartsFolder);
+    // Generate unique filename with timestamp
+    String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+    String fileName =
+        toothNumber + "_" + timestamp + "_" + UUID.randomUUID().toString().substring(0, 8) + ".png";
+
+    String relativePath = layoutPath(patientFolder + "/" + chartsFolder, fileName);
+
+    // Save the file
+    blobStore.put(relativePath, imageData);
+    imageCache.put(relativePath, imageData);
+
+    imageOptimizer.submit(relativePath);
+
+    // Return relative path for database storage
+    return relativePath;
+  }
 
-    // Create directories if they don't exist
-    if (!Files.exists(uploadPath)) {
-      Files.createDirectories(uploadPath);
+  /**
+   * Streaming variant of {@link #writeChartImage(long, String, byte[])}. Images small enough for
+   * the ImageCache are copied into it while they are written.
+   */
+  public String writeChartImage(long patientId, String toothNumber, InputStream imageStream)
+      throws IOException {
+    ImageCache.Capture capture = imageCache.capture(imageStream);
+    if (contentAddressed) {
+      String blobPath = contentAddressedStore.store(capture, 1);
+      imageCache.put(blobPath, capture);
+      return blobPath;
     }
 
+    String patientFolder = "patient_" + patientId;
+    String chartsFolder = "dental_charts";
+
     // Generate unique filename with timestamp
     String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
     String fileName =
         toothNumber + "_" + timestamp + "_" + UUID.randomUUID().toString().substring(0, 8) + ".png";
 
-    Path filePath = uploadPath.resolve(fileName);
+    String relativePath = layoutPath(patientFolder + "/" + chartsFolder, fileName);
 
     // Save the file
-    Files.write(filePath, imageData);
+    blobStore.put(relativePath, capture, -1);
+    imageCache.put(relativePath, capture);
+
+    imageOptimizer.submit(relativePath);
 
     // Return relative path for database storage
-    return patientFolder + "/" + chartsFolder + "/" + fileName;
+    return relativePath;
   }
 
   public String saveDrawingImage(Long patientId, String imageType, byte[] imageData)
       throws IOException {
-    // Create patient-specific directory
+    // Patient-specific folder
     String patientFolder = "patient_" + patientId;
     String softTissueFolder = "soft_tissue_drawings";
 
-    Path uploadPath = Paths.get(uploadDir, patientFolder, softTissueFolder);
-
-    // Create directories if they don't exist
-    if (!Files.exists(uploadPath)) {
-      Files.createDirectories(uploadPath);
-    }
-
     // Generate unique filename with timestamp
     String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
     String fileName =
         imageType + "_" + timestamp + "_" + UUID.randomUUID().toString().substring(0, 8) + ".png";
 
-    Path filePath = uploadPath.resolve(fileName);
+    String relativePath = layoutPath(patientFolder + "/" + softTissueFolder, fileName);
 
     // Save the file
-    Files.write(filePath, imageData);
+    blobStore.put(relativePath, imageData);
+    imageCache.put(relativePath, imageData);
+
+    imageOptimizer.submit(relativePath);
 
     // Return relative path for database storage
-    return patientFolder + "/" + softTissueFolder + "/" + fileName;
+    return relativePath;
   }
 
   public String saveUploadedFile(Long patientId, String imageType, MultipartFile file)
       throws IOException {
-    // Create patient-specific directory
+    // Patient-specific folder
     String patientFolder = "patient_" + patientId;
     String softTissueFolder = "soft_tissue_drawings";
 
-    Path uploadPath = Paths.get(uploadDir, patientFolder, softTissueFolder);
-
-    // Create directories if they don't exist
-    if (!Files.exists(uploadPath)) {
-      Files.createDirectories(uploadPath);
-    }
-
     // Generate unique filename
     String originalFileName = file.getOriginalFilename();
     String fileExtension =
@@ -145,19 +214,72 @@ public class FileStorageService {
             + UUID.randomUUID().toString().substring(0, 8)
             + fileExtension;
 
-    Path filePath = uploadPath.resolve(fileName);
+    String relativePath = layoutPath(patientFolder + "/" + softTissueFolder, fileName);
+
+    // Save the file
+    try (InputStream fileStream = file.getInputStream()) {
+      blobStore.put(relativePath, fileStream, file.getSize());
+    }
+
+    imageOptimizer.submit(relativePath);
+
+    // Return relative path for database storage
+    return relativePath;
+  }
+
+  /**
+   * Stores a file already assembled on local disk, such as a finished resumable upload, without
+   * reading it into memory. The source file is moved into place when the backend allows it.
+   */
+  public String saveLargeUpload(
+      Long patientId, String imageType, String originalFileName, Path file) throws IOException {
+    // Patient-specific folder
+    String patientFolder = "patient_" + patientId;
+    String clinicalFilesFolder = "clinical_files";
+
+    String fileExtension =
+        originalFileName != null && originalFileName.contains(".")
+            ? originalFileName.substring(originalFileName.lastIndexOf(".")).toLowerCase()
+            : ".png";
+
+    String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
+    String fileName =
+        imageType
+            + "_"
+            + timestamp
+            + "_"
+            + UUID.randomUUID().toString().substring(0, 8)
+            + fileExtension;
+
+    String relativePath = layoutPath(patientFolder + "/" + clinicalFilesFolder, fileName);
 
     // Save the file
-    Files.copy(file.getInputStream(), filePath, StandardCopyOption.REPLACE_EXISTING);
+    blobStore.putFile(relativePath, file);
 
     // Return relative path for database storage
-    return patientFolder + "/" + softTissueFolder + "/" + fileName;
+    return relativePath;
   }
 
+  public boolean isContentAddressed() {
+    return contentAddressed;
+  }
+
+  /** Deletes the file, or drops one reference if it is a content-addressed blob */
   public void deleteFile(String relativePath) {
+    if (ContentAddressedStore.isBlobPath(relativePath)) {
+      // The blob stays on disk for its other references, so its cache entry stays valid
+      contentAddressedStore.release(relativePath, 1);
+      return;
+    }
+
+    String storedPath = resolve(relativePath);
+    imageCache.invalidate(relativePath);
+    imageCache.invalidate(storedPath);
+    imageCache.invalidate(storedPath + ImageOptimizer.WEBP_SUFFIX);
+
     try {
-      Path filePath = Paths.get(uploadDir, relativePath);
-      Files.deleteIfExists(filePath);
+      blobStore.delete(storedPath);
+      blobStore.delete(storedPath + ImageOptimizer.WEBP_SUFFIX);
     } catch (IOException e) {
       // Log error but don't throw exception
       System.err.println("Failed to delete file: " + relativePath + " - " + e.getMessage());
@@ -168,8 +290,39 @@ public class FileStorageService {
     return Paths.get(uploadDir, relativePath).toString();
   }
 
+  /** Opens a stored file for reading, whichever backend it is in */
+  public InputStream openFile(String relativePath) throws IOException {
+    return blobStore.open(resolve(relativePath));
+  }
+
   public boolean fileExists(String relativePath) {
-    Path filePath = Paths.get(uploadDir, relativePath);
-    return Files.exists(filePath);
+    try {
+      return blobStore.exists(resolve(relativePath));
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Where a stored path actually is: a legacy path whose file was already moved by
+   * UploadLayoutMigrator, but whose row was not rewritten yet, resolves to its sharded location.
+   */
+  public String resolve(String relativePath) {
+    if (!UploadPathLayout.isLegacy(relativePath)) {
+      return relativePath;
+    }
+    try {
+      String shardedPath = UploadPathLayout.toSharded(relativePath);
+      if (!blobStore.exists(relativePath) && blobStore.exists(shardedPath)) {
+        return shardedPath;
+      }
+    } catch (IOException e) {
+      // Fall back to the path as stored
+    }
+    return relativePath;
+  }
+
+  private String layoutPath(String folder, String fileName) {
+    return sharded ? UploadPathLayout.sharded(folder, fileName) : folder + "/" + fileName;
   }
 }
@@ -1,23 +1,30 @@
 package cmsc128.dentapp.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Base64;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Component;
 
 /**
  * Legacy password encoder that can handle both old and new password formats This is a temporary
- * solution for migration purposes
+ * solution for migration purposes. Legacy SHA-256 hashes, and BCrypt hashes whose cost differs
+ * from app.auth.bcrypt.strength, report {@link #upgradeEncoding} so they are rehashed on login.
  */
 @Component
 public class LegacyPasswordEncoder implements PasswordEncoder {
 
   private final PasswordEncoder bcryptEncoder;
+  private final int bcryptStrength;
 
-  public LegacyPasswordEncoder(PasswordEncoder bcryptEncoder) {
+  public LegacyPasswordEncoder(
+      PasswordEncoder bcryptEncoder,
+      @Value("${app.auth.bcrypt.strength:10}") int bcryptStrength) {
     this.bcryptEncoder = bcryptEncoder;
+    this.bcryptStrength = bcryptStrength;
   }
 
   @Override
@@ -29,9 +36,7 @@ public class LegacyPasswordEncoder implements PasswordEncoder {
   @Override
   public boolean matches(CharSequence rawPassword, String encodedPassword) {
     // First try BCrypt (for new passwords)
-    if (encodedPassword.startsWith("$2a$")
-        || encodedPassword.startsWith("$2b$")
-        || encodedPassword.startsWith("$2y$")) {
+    if (isBcrypt(encodedPassword)) {
       return bcryptEncoder.matches(rawPassword, encodedPassword);
     }
 
@@ -40,9 +45,35 @@ public class LegacyPasswordEncoder implements PasswordEncoder {
       MessageDigest digest = MessageDigest.getInstance("SHA-256");
       byte[] hash = digest.digest(rawPassword.toString().getBytes());
       String base64Hash = Base64.getEncoder().encodeToString(hash);
-      return base64Hash.equals(encodedPassword);
+      return MessageDigest.isEqual(
+          base64Hash.getBytes(StandardCharsets.US_ASCII),
+          encodedPassword.getBytes(StandardCharsets.US_ASCII));
     } catch (NoSuchAlgorithmException e) {
       return false;
     }
   }
+
+  @Override
+  public boolean upgradeEncoding(String encodedPassword) {
+    if (encodedPassword == null || encodedPassword.isEmpty()) {
+      return false;
+    }
+
+    if (!isBcrypt(encodedPassword)) {
+      return true;
+    }
+
+    // BCrypt hashes look like $2a$10$..., where 10 is the cost
+    try {
+      return Integer.parseInt(encodedPassword.substring(4, 6)) != bcryptStrength;
+    } catch (RuntimeException e) {
+      return false;
+    }
+  }
+
+  private static boolean isBcrypt(String encodedPassword) {
+    return encodedPassword.startsWith("$2a$")
+        || encodedPassword.startsWith("$2b$")
+        || encodedPassword.startsWith("$2y$");
+  }
 }
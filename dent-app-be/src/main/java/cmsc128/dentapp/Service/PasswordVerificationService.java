@@ -0,0 +1,158 @@
+package cmsc128.dentapp.Service;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Verifies login passwords on a dedicated, size-limited executor so that bursts of logins cannot
+ * pin every servlet thread on BCrypt. When the queue is full the login is rejected right away
+ * instead of piling up.
+ *
+ * <p>Unknown users are checked against a dummy hash of the same cost, so a login takes as long
+ * whether or not the username exists. Matching passwords whose hash is outdated (legacy SHA-256
+ * or a different BCrypt cost) are rehashed in the same task.
+ */
+@Service
+public class PasswordVerificationService {
+
+  private final LegacyPasswordEncoder passwordEncoder;
+  private final ThreadPoolExecutor executor;
+  private final long timeoutMillis;
+  private final String dummyHash;
+
+  private final Timer waitTimer;
+  private final Timer verifyTimer;
+  private final Counter rejectedCounter;
+  private final Counter rehashCounter;
+
+  public PasswordVerificationService(
+      LegacyPasswordEncoder passwordEncoder,
+      MeterRegistry meterRegistry,
+      @Value("${app.auth.bcrypt.pool-size:4}") int poolSize,
+      @Value("${app.auth.bcrypt.queue-capacity:64}") int queueCapacity,
+      @Value("${app.auth.bcrypt.timeout-ms:10000}") long timeoutMillis) {
+    this.passwordEncoder = passwordEncoder;
+    this.timeoutMillis = timeoutMillis;
+    this.dummyHash = passwordEncoder.encode("dummy-password-for-unknown-users");
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    this.executor =
+        new ThreadPoolExecutor(
+            poolSize,
+            poolSize,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread =
+                  new Thread(runnable, "password-verify-" + threadNumber.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+
+    this.waitTimer =
+        Timer.builder("dentapp.auth.password.wait")
+            .description("Time a login waits in the queue before its password is checked")
+            .register(meterRegistry);
+    this.verifyTimer =
+        Timer.builder("dentapp.auth.password.verify")
+            .description("Time spent hashing and comparing a login password")
+            .register(meterRegistry);
+    this.rejectedCounter =
+        Counter.builder("dentapp.auth.password.rejected")
+            .description("Logins rejected because the verification queue was full")
+            .register(meterRegistry);
+    this.rehashCounter =
+        Counter.builder("dentapp.auth.password.rehashed")
+            .description("Password hashes upgraded on login")
+            .register(meterRegistry);
+    Gauge.builder("dentapp.auth.password.queue.depth", executor, e -> e.getQueue().size())
+        .description("Logins waiting for a password verification thread")
+        .register(meterRegistry);
+    Gauge.builder("dentapp.auth.password.active", executor, ThreadPoolExecutor::getActiveCount)
+        .description("Password verifications in progress")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Checks the password against the stored hash ({@code null} for an unknown user). Throws
+   * RejectedExecutionException when too many logins are already queued.
+   */
+  public VerificationResult verify(String rawPassword, String encodedPassword) {
+    long submittedAt = System.nanoTime();
+    Future<VerificationResult> future;
+    try {
+      future = executor.submit(() -> check(rawPassword, encodedPassword, submittedAt));
+    } catch (RejectedExecutionException e) {
+      rejectedCounter.increment();
+      throw e;
+    }
+
+    try {
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while verifying password", e);
+    } catch (TimeoutException e) {
+      future.cancel(true);
+      throw new IllegalStateException("Timed out verifying password", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Password verification failed", e.getCause());
+    }
+  }
+
+  private VerificationResult check(String rawPassword, String encodedPassword, long submittedAt) {
+    long start = System.nanoTime();
+    waitTimer.record(start - submittedAt, TimeUnit.NANOSECONDS);
+    try {
+      if (encodedPassword == null) {
+        passwordEncoder.matches(rawPassword, dummyHash);
+        return new VerificationResult(false, null);
+      }
+
+      if (!passwordEncoder.matches(rawPassword, encodedPassword)) {
+        return new VerificationResult(false, null);
+      }
+
+      if (passwordEncoder.upgradeEncoding(encodedPassword)) {
+        rehashCounter.increment();
+        return new VerificationResult(true, passwordEncoder.encode(rawPassword));
+      }
+      return new VerificationResult(true, null);
+    } finally {
+      verifyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  @Getter
+  @AllArgsConstructor
+  public static class VerificationResult {
+    private final boolean matched;
+
+    // New hash to store when the old one was outdated, otherwise null
+    private final String upgradedHash;
+  }
+}
@@ -0,0 +1,81 @@
+package cmsc128.dentapp.Utils;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+import io.jsonwebtoken.Claims;
+
+/**
+ * Bounded cache of signature-verified JWT claims, keyed by the raw token string. Each entry
+ * expires together with the token it was parsed from (capped by a maximum TTL), so a cached entry
+ * is never served after the token itself has expired.
+ */
+@Component
+public class JwtClaimsCache {
+
+  private final Cache<String, Claims> cache;
+
+  public JwtClaimsCache(
+      @Value("${jwt.claims-cache.max-size:10000}") long maxSize,
+      @Value("${jwt.claims-cache.max-ttl:900}") long maxTtlSeconds) {
+    long maxTtlNanos = TimeUnit.SECONDS.toNanos(maxTtlSeconds);
+    this.cache =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfter(
+                new Expiry<String, Claims>() {
+                  @Override
+                  public long expireAfterCreate(String token, Claims claims, long currentTime) {
+                    return remainingLifetime(claims, maxTtlNanos);
+                  }
+
+                  @Override
+                  public long expireAfterUpdate(
+                      String token, Claims claims, long currentTime, long currentDuration) {
+                    return remainingLifetime(claims, maxTtlNanos);
+                  }
+
+                  @Override
+                  public long expireAfterRead(
+                      String token, Claims claims, long currentTime, long currentDuration) {
+                    return currentDuration;
+                  }
+                })
+            .build();
+  }
+
+  /** Returns the cached claims for the token, or null if it has not been verified recently */
+  public Claims get(String token) {
+    return cache.getIfPresent(token);
+  }
+
+  public void put(String token, Claims claims) {
+    if (claims.getExpiration() != null) {
+      cache.put(token, claims);
+    }
+  }
+
+  public void invalidate(String token) {
+    cache.invalidate(token);
+  }
+
+  public void invalidateAll() {
+    cache.invalidateAll();
+  }
+
+  private static long remainingLifetime(Claims claims, long maxTtlNanos) {
+    Date expiration = claims.getExpiration();
+    long remainingMillis = expiration.getTime() - System.currentTimeMillis();
+    if (remainingMillis <= 0) {
+      return 0;
+    }
+    return Math.min(TimeUnit.MILLISECONDS.toNanos(remainingMillis), maxTtlNanos);
+  }
+}
@@ -0,0 +1,78 @@
+package cmsc128.dentapp.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.crypto.SecretKey;
+
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+
+/**
+ * Immutable set of HMAC keys used to sign and verify JWTs. New tokens are always signed with the
+ * active key and carry its id in the {@code kid} header; retired keys stay in the ring for
+ * verification only, so rotating the secret does not invalidate live sessions.
+ */
+public final class JwtKeyring extends LocatorAdapter<Key> {
+
+  private final String activeKeyId;
+  private final SecretKey activeKey;
+  private final Map<String, SecretKey> keys;
+
+  /**
+   * @param activeKeyId id written to the {@code kid} header of new tokens
+   * @param activeSecret secret of the signing key
+   * @param retiredKeys comma-separated {@code kid:secret} pairs that are still accepted for
+   *     verification, may be empty
+   */
+  public JwtKeyring(String activeKeyId, String activeSecret, String retiredKeys) {
+    Map<String, SecretKey> ring = new LinkedHashMap<>();
+
+    if (retiredKeys != null && !retiredKeys.isBlank()) {
+      for (String entry : retiredKeys.split(",")) {
+        int separator = entry.indexOf(':');
+        if (separator <= 0 || separator == entry.length() - 1) {
+          throw new IllegalArgumentException("Invalid retired JWT key entry, expected kid:secret");
+        }
+        ring.put(entry.substring(0, separator).trim(), toKey(entry.substring(separator + 1).trim()));
+      }
+    }
+
+    this.activeKeyId = activeKeyId;
+    this.activeKey = toKey(activeSecret);
+    ring.put(activeKeyId, activeKey);
+    this.keys = Map.copyOf(ring);
+  }
+
+  public String getActiveKeyId() {
+    return activeKeyId;
+  }
+
+  public SecretKey getActiveKey() {
+    return activeKey;
+  }
+
+  @Override
+  protected Key locate(JwsHeader header) {
+    String keyId = header.getKeyId();
+
+    // Tokens issued before key ids were introduced are signed with the active secret
+    if (keyId == null) {
+      return activeKey;
+    }
+
+    SecretKey key = keys.get(keyId);
+    if (key == null) {
+      throw new UnsupportedJwtException("Unknown JWT signing key id: " + keyId);
+    }
+    return key;
+  }
+
+  private static SecretKey toKey(String secret) {
+    return Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+  }
+}
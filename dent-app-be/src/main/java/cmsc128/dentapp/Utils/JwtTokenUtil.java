@@ -5,36 +5,46 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.function.Function;
 
-import javax.crypto.SecretKey;
-
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
 
 @Component
 public class JwtTokenUtil {
 
-  @Value("${jwt.secret:mySecretKey}")
-  private String secret;
+  private final JwtClaimsCache claimsCache;
+
+  private final JwtKeyring keyring;
+
+  // JwtParser is immutable and thread-safe, so a single instance serves every request
+  private final JwtParser parser;
 
-  @Value("${jwt.access-token-expiration:900}") // 15 minutes in seconds
-  private int accessTokenExpiration;
+  private final int accessTokenExpiration;
 
-  @Value("${jwt.refresh-token-expiration:604800}") // 7 days in seconds
-  private int refreshTokenExpiration;
+  private final int refreshTokenExpiration;
 
-  private SecretKey getSigningKey() {
-    return Keys.hmacShaKeyFor(secret.getBytes());
+  public JwtTokenUtil(
+      JwtClaimsCache claimsCache,
+      @Value("${jwt.secret:mySecretKey}") String secret,
+      @Value("${jwt.key-id:primary}") String keyId,
+      @Value("${jwt.retired-keys:}") String retiredKeys,
+      @Value("${jwt.access-token-expiration:900}") int accessTokenExpiration, // 15 minutes
+      @Value("${jwt.refresh-token-expiration:604800}") int refreshTokenExpiration) { // 7 days
+    this.claimsCache = claimsCache;
+    this.keyring = new JwtKeyring(keyId, secret, retiredKeys);
+    this.parser = Jwts.parser().keyLocator(keyring).build();
+    this.accessTokenExpiration = accessTokenExpiration;
+    this.refreshTokenExpiration = refreshTokenExpiration;
   }
 
-  public String generateAccessToken(String username, String role, Long userId) {
+  public String generateAccessToken(String username, String role, Long userId, String sessionId) {
     Map<String, Object> claims = new HashMap<>();
     claims.put("role", role);
     claims.put("userId", userId);
+    claims.put("sessionId", sessionId);
     claims.put("tokenType", "ACCESS");
     return createToken(claims, username, accessTokenExpiration);
   }
@@ -51,12 +61,16 @@ public class JwtTokenUtil {
     Date now = new Date();
     Date expirationDate = new Date(now.getTime() + expirationSeconds * 1000L);
 
+    // JwtBuilder is stateful and not thread-safe, so only the key is shared between calls
     return Jwts.builder()
-        .setClaims(claims)
-        .setSubject(subject)
-        .setIssuedAt(now)
-        .setExpiration(expirationDate)
-        .signWith(getSigningKey(), SignatureAlgorithm.HS512)
+        .header()
+        .keyId(keyring.getActiveKeyId())
+        .and()
+        .claims(claims)
+        .subject(subject)
+        .issuedAt(now)
+        .expiration(expirationDate)
+        .signWith(keyring.getActiveKey(), Jwts.SIG.HS512)
         .compact();
   }
 
@@ -90,7 +104,29 @@ public class JwtTokenUtil {
   }
 
   private Claims getAllClaimsFromToken(String token) {
-    return Jwts.parser().setSigningKey(getSigningKey()).build().parseClaimsJws(token).getBody();
+    Claims cached = claimsCache.get(token);
+    if (cached != null) {
+      return cached;
+    }
+
+    Claims claims = parser.parseSignedClaims(token).getPayload();
+    claimsCache.put(token, claims);
+    return claims;
+  }
+
+  /**
+   * Verifies the token once and returns its claims if it is an unexpired token of the expected
+   * type, or null otherwise. Signature and format errors are propagated as {@link
+   * io.jsonwebtoken.JwtException}s, exactly as the individual getters do.
+   */
+  public Claims validateAndExtract(String token, String expectedTokenType) {
+    final Claims claims = getAllClaimsFromToken(token);
+    if (claims.getSubject() == null
+        || claims.getExpiration().before(new Date())
+        || !expectedTokenType.equals(claims.get("tokenType", String.class))) {
+      return null;
+    }
+    return claims;
   }
 
   public Boolean isTokenExpired(String token) {
@@ -99,17 +135,13 @@ public class JwtTokenUtil {
   }
 
   public Boolean validateAccessToken(String token, String username) {
-    final String tokenUsername = getUsernameFromToken(token);
-    final String tokenType = getTokenType(token);
-    return (tokenUsername.equals(username) && !isTokenExpired(token) && "ACCESS".equals(tokenType));
+    final Claims claims = validateAndExtract(token, "ACCESS");
+    return claims != null && claims.getSubject().equals(username);
   }
 
   public Boolean validateRefreshToken(String token, String username) {
-    final String tokenUsername = getUsernameFromToken(token);
-    final String tokenType = getTokenType(token);
-    return (tokenUsername.equals(username)
-        && !isTokenExpired(token)
-        && "REFRESH".equals(tokenType));
+    final Claims claims = validateAndExtract(token, "REFRESH");
+    return claims != null && claims.getSubject().equals(username);
   }
 
   public long getAccessTokenExpirationTime() {
@@ -0,0 +1,43 @@
+package cmsc128.dentapp.Utils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * SHA-256 digests of bearer tokens. Only the digest of a refresh token is stored, so a leaked
+ * USER_SESSION table does not hand out usable tokens.
+ */
+public final class TokenDigest {
+
+  private TokenDigest() {}
+
+  /** Lower-case hex SHA-256 of the token, 64 characters long */
+  public static String sha256Hex(String token) {
+    return HexFormat.of().formatHex(sha256(token));
+  }
+
+  /** Constant-time comparison of the token's digest against a stored hex digest */
+  public static boolean matches(String token, String storedHexDigest) {
+    if (token == null || storedHexDigest == null) {
+      return false;
+    }
+    byte[] expected;
+    try {
+      expected = HexFormat.of().parseHex(storedHexDigest);
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    return MessageDigest.isEqual(sha256(token), expected);
+  }
+
+  private static byte[] sha256(String token) {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+}
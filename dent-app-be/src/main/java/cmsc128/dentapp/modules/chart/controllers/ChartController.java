@@ -1,9 +1,23 @@
 package cmsc128.dentapp.modules.chart.controllers;
 
+import java.util.Map;
+
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
 
 import cmsc128.dentapp.modules.chart.dto.AddChartDTO;
+import cmsc128.dentapp.modules.chart.dto.ChartCohortPage;
+import cmsc128.dentapp.modules.chart.dto.ChartHistoryPage;
+import cmsc128.dentapp.modules.chart.dto.PatchChartDTO;
 import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothImage;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
+import cmsc128.dentapp.modules.chart.services.ChartNotFoundException;
 import cmsc128.dentapp.modules.chart.services.ChartService;
 
 @CrossOrigin
@@ -23,15 +37,146 @@ public class ChartController {
     return this.chartService.saveChart(addChartDTO);
   }
 
+  /**
+   * Same as /save, but as multipart/form-data: a "chart" JSON part with treatmentPlans,
+   * lesionStatuses, icdasCodes and patientId or patientNumber, plus one file part per tooth image
+   * named teeth11..teeth48 or EC11..EC48. Images are copied to disk from the upload stream instead
+   * of being base64-decoded into memory.
+   */
+  @PostMapping(
+      path = {"/save-multipart"},
+      consumes = {MediaType.MULTIPART_FORM_DATA_VALUE})
+  @ResponseBody
+  public Chart saveChartMultipart(
+      @RequestPart(value = "chart", required = false) AddChartDTO addChartDTO,
+      @RequestParam Map<String, MultipartFile> images) {
+    return this.chartService.saveChart(addChartDTO, images);
+  }
+
   @GetMapping(path = {"/findbyid"})
   @ResponseBody
   public Chart findByID(@RequestParam(value = "chartid") Long chartID) {
     return chartService.findByID(chartID);
   }
 
-  //    @GetMapping(path={"/findbypatient"})
-  //    @ResponseBody
-  //    public Chart findByPatientID(@RequestParam(value="patientid") Long patientID){
-  //        return this.chartService.findByPatientID(patientID);
-  //    }
+  /**
+   * Charts with a coded finding, e.g. /chart/cohort?type=ICDAS&teeth=molars&minCode=3. teeth takes
+   * FDI numbers and/or molars, premolars, canines, incisors; codes takes exact codes instead of
+   * minCode. Results are chart ids in pages of size; pass nextAfter back as after for the next
+   * page.
+   */
+  @GetMapping(path = {"/cohort"})
+  @ResponseBody
+  public ResponseEntity<ChartCohortPage> findCohort(
+      @RequestParam(value = "type") FindingType type,
+      @RequestParam(value = "teeth", required = false) String teeth,
+      @RequestParam(value = "codes", required = false) String codes,
+      @RequestParam(value = "minCode", required = false) Integer minCode,
+      @RequestParam(value = "after", defaultValue = "0") long after,
+      @RequestParam(value = "size", defaultValue = "100") int size) {
+    try {
+      return ResponseEntity.ok(chartService.findCohort(type, teeth, codes, minCode, after, size));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
+  /** Returns one tooth image of a chart, e.g. /chart/5/tooth-image/teeth11 or .../EC48 */
+  @GetMapping(path = {"/{chartId}/tooth-image/{imageName}"})
+  @ResponseBody
+  public ResponseEntity<ChartToothImage> findToothImage(
+      @PathVariable Long chartId, @PathVariable String imageName) {
+    try {
+      return ResponseEntity.ok(chartService.findToothImage(chartId, imageName));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    } catch (ChartNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    }
+  }
+
+  /**
+   * Replaces one tooth image of a chart; the request body is the raw PNG. If-Match must carry the
+   * chart's current version, as PATCH's body does; a stale version is rejected with 409.
+   */
+  @PutMapping(
+      path = {"/{chartId}/tooth-image/{imageName}"},
+      consumes = {MediaType.IMAGE_PNG_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+  @ResponseBody
+  public ResponseEntity<ChartToothImage> replaceToothImage(
+      @PathVariable Long chartId,
+      @PathVariable String imageName,
+      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+      @RequestBody byte[] image) {
+    try {
+      return ResponseEntity.ok(
+          chartService.replaceToothImage(chartId, imageName, image, parseVersion(ifMatch)));
+    } catch (OptimisticLockingFailureException e) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    } catch (ChartNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    }
+  }
+
+  /**
+   * Updates only what is sent: tooth images (teeth11..EC48, base64) and treatmentPlans,
+   * lesionStatuses or icdasCodes. The body must carry the chart's current version; if someone
+   * else updated the chart since, the edit is rejected with 409 and the client should reload.
+   */
+  @PatchMapping(path = {"/{chartId}"})
+  @ResponseBody
+  public ResponseEntity<Chart> patchChart(
+      @PathVariable Long chartId, @RequestBody PatchChartDTO patchChartDTO) {
+    try {
+      return ResponseEntity.ok(chartService.patchChart(chartId, patchChartDTO));
+    } catch (OptimisticLockingFailureException e) {
+      return ResponseEntity.status(HttpStatus.CONFLICT).build();
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    } catch (ChartNotFoundException e) {
+      return ResponseEntity.notFound().build();
+    }
+  }
+
+  @GetMapping(path = {"/findbypatient"})
+  @ResponseBody
+  public Chart findByPatientID(@RequestParam(value = "patientid") Long patientID) {
+    return this.chartService.findByPatientID(patientID);
+  }
+
+  /**
+   * The patient's charts, newest first, as summaries without images. Pass nextBefore back as
+   * before to get the next page.
+   */
+  @GetMapping(path = {"/patient/{patientId}"})
+  @ResponseBody
+  public ResponseEntity<ChartHistoryPage> findChartHistory(
+      @PathVariable Long patientId,
+      @RequestParam(value = "before", required = false) Long before,
+      @RequestParam(value = "size", defaultValue = "20") int size) {
+    try {
+      return ResponseEntity.ok(chartService.findChartHistory(patientId, before, size));
+    } catch (IllegalArgumentException e) {
+      return ResponseEntity.badRequest().build();
+    }
+  }
+
+  /** The chart version in an If-Match header such as "3", W/"3" or 3; null if there is none */
+  private static Long parseVersion(String ifMatch) {
+    if (ifMatch == null || ifMatch.isBlank()) {
+      return null;
+    }
+    String version = ifMatch.trim();
+    if (version.startsWith("W/")) {
+      version = version.substring(2);
+    }
+    version = version.replace("\"", "");
+    try {
+      return Long.valueOf(version);
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("If-Match must be the chart version");
+    }
+  }
 }
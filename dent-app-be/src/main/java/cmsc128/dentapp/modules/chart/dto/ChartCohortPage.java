@@ -0,0 +1,20 @@
+package cmsc128.dentapp.modules.chart.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** One page of the charts matching a cohort query, in chart id order */
+@Getter
+@AllArgsConstructor
+public class ChartCohortPage {
+
+  private final List<Long> chartIds;
+
+  // Number of matching charts over all pages
+  private final long total;
+
+  // Pass as "after" to get the next page; null on the last page
+  private final Long nextAfter;
+}
@@ -0,0 +1,17 @@
+package cmsc128.dentapp.modules.chart.dto;
+
+import java.util.List;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** One page of a patient's charts, newest first */
+@Getter
+@AllArgsConstructor
+public class ChartHistoryPage {
+
+  private final List<ChartSummaryDTO> charts;
+
+  // Pass as "before" to get the next (older) page; null on the last page
+  private final Long nextBefore;
+}
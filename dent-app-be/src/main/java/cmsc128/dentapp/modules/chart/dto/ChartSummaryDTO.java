@@ -0,0 +1,21 @@
+package cmsc128.dentapp.modules.chart.dto;
+
+import java.time.LocalDateTime;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** A chart in a patient's chart history, without its tooth images and codes */
+@Getter
+@AllArgsConstructor
+public class ChartSummaryDTO {
+
+  private final Long chartID;
+
+  private final LocalDateTime createdAt;
+
+  private final Long version;
+
+  // Null until the chart's sprite has been generated
+  private final String thumbnailPath;
+}
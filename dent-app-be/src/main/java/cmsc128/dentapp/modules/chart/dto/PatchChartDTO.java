@@ -0,0 +1,50 @@
+package cmsc128.dentapp.modules.chart.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import cmsc128.dentapp.modules.chart.entities.ToothImageSlot;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Sparse chart update: only the tooth images and fields that are present are changed. version
+ * must be the chart version the client last read, otherwise the update is rejected.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class PatchChartDTO {
+
+  @JsonProperty("version")
+  private Long version;
+
+  // Changed tooth images only, keyed teeth11..teeth48 / EC11..EC48 like AddChartDTO
+  @JsonIgnore private Map<String, byte[]> toothImages = new LinkedHashMap<>();
+
+  @JsonProperty("treatmentPlans")
+  private String treatmentPlans;
+
+  @JsonProperty("lesionStatuses")
+  private String lesionStatuses;
+
+  @JsonProperty("icdasCodes")
+  private String icdasCodes;
+
+  // Any other unknown property is ignored, whatever its type
+  @JsonAnySetter
+  public void setToothImage(String imageName, Object image) {
+    if (ToothImageSlot.fromImageName(imageName) == null || image == null) {
+      return;
+    }
+    byte[] data = ToothImageJson.decode(imageName, image);
+    if (data.length > 0) {
+      toothImages.put(imageName, data);
+    }
+  }
+}
@@ -0,0 +1,16 @@
+package cmsc128.dentapp.modules.chart.dto;
+
+import com.fasterxml.jackson.core.Base64Variants;
+
+/** Decodes a tooth image sent in JSON as a base64 string, the way Jackson decodes a byte[] */
+final class ToothImageJson {
+
+  private ToothImageJson() {}
+
+  static byte[] decode(String imageName, Object value) {
+    if (!(value instanceof String)) {
+      throw new IllegalArgumentException(imageName + " must be a base64 string");
+    }
+    return Base64Variants.getDefaultVariant().decode((String) value);
+  }
+}
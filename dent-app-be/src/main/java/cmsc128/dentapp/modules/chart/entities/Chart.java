@@ -1,13 +1,28 @@
 package cmsc128.dentapp.modules.chart.entities;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import cmsc128.dentapp.modules.patient.entities.Patient;
 import jakarta.persistence.*;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 @Entity(name = "CHART")
+@Table(
+    indexes = {
+      @Index(name = "CHART_PATIENT_IDX", columnList = "PATIENT_ID, CHART_ID"),
+      @Index(name = "CHART_SPRITE_PATH_IDX", columnList = "SPRITE_PATH"),
+      @Index(name = "CHART_THUMBNAIL_PATH_IDX", columnList = "THUMBNAIL_PATH")
+    })
 @Data
 @NoArgsConstructor
 public class Chart {
@@ -17,203 +32,31 @@ public class Chart {
   @GeneratedValue(strategy = GenerationType.AUTO, generator = "CHART_SEQ")
   private long chartID;
 
+  // Bumped on every update so concurrent edits of the same chart can be detected
+  @Version
+  @Column(name = "VERSION", nullable = false)
+  private Long version;
+
   // ===== RELATIONSHIPS =====
   @JsonIgnore
   @ManyToOne(fetch = FetchType.LAZY)
   @JoinColumn(name = "PATIENT_ID", nullable = false)
   private Patient patient;
 
-  @Column(name = "TEETH11_PATH", nullable = true)
-  private String teeth11Path;
-
-  @Column(name = "TEETH12_PATH", nullable = true)
-  private String teeth12Path;
-
-  @Column(name = "TEETH13_PATH", nullable = true)
-  private String teeth13Path;
-
-  @Column(name = "TEETH14_PATH", nullable = true)
-  private String teeth14Path;
-
-  @Column(name = "TEETH15_PATH", nullable = true)
-  private String teeth15Path;
-
-  @Column(name = "TEETH16_PATH", nullable = true)
-  private String teeth16Path;
-
-  @Column(name = "TEETH17_PATH", nullable = true)
-  private String teeth17Path;
-
-  @Column(name = "TEETH18_PATH", nullable = true)
-  private String teeth18Path;
-
-  @Column(name = "TEETH21_PATH", nullable = true)
-  private String teeth21Path;
-
-  @Column(name = "TEETH22_PATH", nullable = true)
-  private String teeth22Path;
-
-  @Column(name = "TEETH23_PATH", nullable = true)
-  private String teeth23Path;
-
-  @Column(name = "TEETH24_PATH", nullable = true)
-  private String teeth24Path;
-
-  @Column(name = "TEETH25_PATH", nullable = true)
-  private String teeth25Path;
-
-  @Column(name = "TEETH26_PATH", nullable = true)
-  private String teeth26Path;
-
-  @Column(name = "TEETH27_PATH", nullable = true)
-  private String teeth27Path;
-
-  @Column(name = "TEETH28_PATH", nullable = true)
-  private String teeth28Path;
-
-  @Column(name = "TEETH31_PATH", nullable = true)
-  private String teeth31Path;
-
-  @Column(name = "TEETH32_PATH", nullable = true)
-  private String teeth32Path;
-
-  @Column(name = "TEETH33_PATH", nullable = true)
-  private String teeth33Path;
-
-  @Column(name = "TEETH34_PATH", nullable = true)
-  private String teeth34Path;
-
-  @Column(name = "TEETH35_PATH", nullable = true)
-  private String teeth35Path;
-
-  @Column(name = "TEETH36_PATH", nullable = true)
-  private String teeth36Path;
-
-  @Column(name = "TEETH37_PATH", nullable = true)
-  private String teeth37Path;
-
-  @Column(name = "TEETH38_PATH", nullable = true)
-  private String teeth38Path;
-
-  @Column(name = "TEETH41_PATH", nullable = true)
-  private String teeth41Path;
-
-  @Column(name = "TEETH42_PATH", nullable = true)
-  private String teeth42Path;
-
-  @Column(name = "TEETH43_PATH", nullable = true)
-  private String teeth43Path;
-
-  @Column(name = "TEETH44_PATH", nullable = true)
-  private String teeth44Path;
-
-  @Column(name = "TEETH45_PATH", nullable = true)
-  private String teeth45Path;
-
-  @Column(name = "TEETH46_PATH", nullable = true)
-  private String teeth46Path;
-
-  @Column(name = "TEETH47_PATH", nullable = true)
-  private String teeth47Path;
-
-  @Column(name = "TEETH48_PATH", nullable = true)
-  private String teeth48Path;
-
-  @Column(name = "EC11_PATH", nullable = true)
-  private String EC11Path;
-
-  @Column(name = "EC12_PATH", nullable = true)
-  private String EC12Path;
-
-  @Column(name = "EC13_PATH", nullable = true)
-  private String EC13Path;
-
-  @Column(name = "EC14_PATH", nullable = true)
-  private String EC14Path;
-
-  @Column(name = "EC15_PATH", nullable = true)
-  private String EC15Path;
-
-  @Column(name = "EC16_PATH", nullable = true)
-  private String EC16Path;
-
-  @Column(name = "EC17_PATH", nullable = true)
-  private String EC17Path;
-
-  @Column(name = "EC18_PATH", nullable = true)
-  private String EC18Path;
-
-  @Column(name = "EC21_PATH", nullable = true)
-  private String EC21Path;
-
-  @Column(name = "EC22_PATH", nullable = true)
-  private String EC22Path;
-
-  @Column(name = "EC23_PATH", nullable = true)
-  private String EC23Path;
-
-  @Column(name = "EC24_PATH", nullable = true)
-  private String EC24Path;
-
-  @Column(name = "EC25_PATH", nullable = true)
-  private String EC25Path;
-
-  @Column(name = "EC26_PATH", nullable = true)
-  private String EC26Path;
-
-  @Column(name = "EC27_PATH", nullable = true)
-  private String EC27Path;
-
-  @Column(name = "EC28_PATH", nullable = true)
-  private String EC28Path;
-
-  @Column(name = "EC31_PATH", nullable = true)
-  private String EC31Path;
-
-  @Column(name = "EC32_PATH", nullable = true)
-  private String EC32Path;
-
-  @Column(name = "EC33_PATH", nullable = true)
-  private String EC33Path;
-
-  @Column(name = "EC34_PATH", nullable = true)
-  private String EC34Path;
-
-  @Column(name = "EC35_PATH", nullable = true)
-  private String EC35Path;
-
-  @Column(name = "EC36_PATH", nullable = true)
-  private String EC36Path;
-
-  @Column(name = "EC37_PATH", nullable = true)
-  private String EC37Path;
-
-  @Column(name = "EC38_PATH", nullable = true)
-  private String EC38Path;
-
-  @Column(name = "EC41_PATH", nullable = true)
-  private String EC41Path;
-
-  @Column(name = "EC42_PATH", nullable = true)
-  private String EC42Path;
-
-  @Column(name = "EC43_PATH", nullable = true)
-  private String EC43Path;
-
-  @Column(name = "EC44_PATH", nullable = true)
-  private String EC44Path;
-
-  @Column(name = "EC45_PATH", nullable = true)
-  private String EC45Path;
-
-  @Column(name = "EC46_PATH", nullable = true)
-  private String EC46Path;
-
-  @Column(name = "EC47_PATH", nullable = true)
-  private String EC47Path;
-
-  @Column(name = "EC48_PATH", nullable = true)
-  private String EC48Path;
+  // Tooth images live in CHART_TOOTH_IMAGE, one row per image that was drawn
+  @JsonIgnore
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  @OneToMany(
+      mappedBy = "chart",
+      cascade = CascadeType.ALL,
+      orphanRemoval = true,
+      fetch = FetchType.LAZY)
+  private List<ChartToothImage> toothImages = new ArrayList<>();
+
+  // Null for charts saved before this column existed
+  @Column(name = "CREATED_AT", nullable = true)
+  private LocalDateTime createdAt;
 
   @Column(name = "TREATMENT_PLANS", nullable = true)
   private String treatmentPlans;
@@ -223,4 +66,60 @@ public class Chart {
 
   @Column(name = "ICDAS_CODES", nullable = true)
   private String icdasCodes;
+
+  // Generated in the background after the chart is saved, so it may still be empty
+  @Embedded private ChartSprite sprite;
+
+  @PrePersist
+  protected void onCreate() {
+    createdAt = LocalDateTime.now();
+  }
+
+  /** Adds the image for the tooth, or points the existing one at the new path */
+  public ChartToothImage putToothImage(
+      ToothSurfaceKind surfaceKind, Integer toothNumber, String imagePath) {
+    for (ChartToothImage toothImage : toothImages) {
+      if (toothImage.getSurfaceKind() == surfaceKind
+          && toothImage.getToothNumber().equals(toothNumber)) {
+        toothImage.setImagePath(imagePath);
+        return toothImage;
+      }
+    }
+
+    ChartToothImage toothImage = new ChartToothImage(this, surfaceKind, toothNumber, imagePath);
+    toothImages.add(toothImage);
+    return toothImage;
+  }
+
+  /**
+   * Tooth image paths under the keys charts were serialized with before the images moved to
+   * their own table (teeth11Path ... EC48Path), so API clients keep working.
+   */
+  @JsonAnyGetter
+  public Map<String, String> getToothImagePaths() {
+    Map<String, String> paths = new LinkedHashMap<>();
+    for (ChartToothImage toothImage : toothImages) {
+      paths.put(
+          toothImage.getSurfaceKind().getImagePrefix() + toothImage.getToothNumber() + "Path",
+          toothImage.getImagePath());
+    }
+    return paths;
+  }
+
+  /** Where each tooth image sits in the sprite as {x, y}, or null if there is no sprite yet */
+  public Map<String, int[]> getSpriteTiles() {
+    if (sprite == null || sprite.getPath() == null || sprite.getColumns() == null) {
+      return null;
+    }
+
+    Map<String, int[]> tiles = new LinkedHashMap<>();
+    for (ChartToothImage toothImage : toothImages) {
+      ToothImageSlot slot =
+          ToothImageSlot.of(toothImage.getSurfaceKind(), toothImage.getToothNumber());
+      if (slot != null) {
+        tiles.put(slot.getImageName(), sprite.tileOrigin(slot));
+      }
+    }
+    return tiles;
+  }
 }
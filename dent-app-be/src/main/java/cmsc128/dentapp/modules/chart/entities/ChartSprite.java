@@ -0,0 +1,42 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Sprite sheet of all tooth images of a chart plus a small thumbnail of it. Tiles are laid out
+ * in {@link ToothImageSlot#ALL} order, {@code columns} per row, each {@code cellWidth} by
+ * {@code cellHeight} pixels.
+ *
+ * <p>The columns are not updatable through the entity: only ChartRepository's sprite queries
+ * write them. Otherwise a Chart loaded before the sprite was regenerated would write the old,
+ * already deleted sprite back when it is saved.
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+public class ChartSprite {
+  @Column(name = "SPRITE_PATH", nullable = true, updatable = false)
+  private String path;
+
+  @Column(name = "THUMBNAIL_PATH", nullable = true, updatable = false)
+  private String thumbnailPath;
+
+  @Column(name = "SPRITE_CELL_WIDTH", nullable = true, updatable = false)
+  private Integer cellWidth;
+
+  @Column(name = "SPRITE_CELL_HEIGHT", nullable = true, updatable = false)
+  private Integer cellHeight;
+
+  @Column(name = "SPRITE_COLUMNS", nullable = true, updatable = false)
+  private Integer columns;
+
+  /** Top-left corner {x, y} of the slot's tile in the sprite */
+  public int[] tileOrigin(ToothImageSlot slot) {
+    return new int[] {
+      (slot.getIndex() % columns) * cellWidth, (slot.getIndex() / columns) * cellHeight
+    };
+  }
+}
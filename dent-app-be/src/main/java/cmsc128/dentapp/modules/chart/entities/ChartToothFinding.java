@@ -0,0 +1,69 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * One coded finding of a chart (a treatment plan, lesion status or ICDAS code on one surface of
+ * one tooth), parsed from the chart's coded fields whenever it is saved so that charts can be
+ * queried by finding without parsing every chart.
+ */
+@Entity(name = "CHART_TOOTH_FINDING")
+@Table(
+    indexes = {
+      @Index(
+          name = "CHART_TOOTH_FINDING_CODE_IDX",
+          columnList = "FINDING_TYPE, CODE, TOOTH_NUMBER"),
+      @Index(name = "CHART_TOOTH_FINDING_CHART_IDX", columnList = "CHART_ID")
+    })
+@Data
+@NoArgsConstructor
+public class ChartToothFinding {
+  @Id
+  @SequenceGenerator(
+      name = "CHART_TOOTH_FINDING_SEQ",
+      sequenceName = "CHART_TOOTH_FINDING_SEQ",
+      allocationSize = 1)
+  @Column(name = "CHART_TOOTH_FINDING_ID", nullable = false)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "CHART_TOOTH_FINDING_SEQ")
+  private Long chartToothFindingId;
+
+  @JsonIgnore
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "CHART_ID", nullable = false)
+  private Chart chart;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "FINDING_TYPE", nullable = false, length = 16)
+  private FindingType findingType;
+
+  @Column(name = "TOOTH_NUMBER", nullable = false)
+  private Integer toothNumber;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "SURFACE", nullable = false, length = 8)
+  private ToothSurface surface;
+
+  @Column(name = "CODE", nullable = false, length = 8)
+  private String code;
+
+  public ChartToothFinding(
+      Chart chart,
+      FindingType findingType,
+      Integer toothNumber,
+      ToothSurface surface,
+      String code) {
+    this.chart = chart;
+    this.findingType = findingType;
+    this.toothNumber = toothNumber;
+    this.surface = surface;
+    this.code = code;
+  }
+}
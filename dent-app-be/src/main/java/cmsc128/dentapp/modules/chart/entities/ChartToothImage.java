@@ -0,0 +1,55 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/** One tooth image of a chart, identified by surface kind and FDI tooth number */
+@Entity(name = "CHART_TOOTH_IMAGE")
+@Table(
+    uniqueConstraints =
+        @UniqueConstraint(
+            name = "CHART_TOOTH_IMAGE_UK",
+            columnNames = {"CHART_ID", "SURFACE_KIND", "TOOTH_NUMBER"}),
+    indexes = @Index(name = "CHART_TOOTH_IMAGE_PATH_IDX", columnList = "IMAGE_PATH"))
+@Data
+@NoArgsConstructor
+public class ChartToothImage {
+  @Id
+  @SequenceGenerator(
+      name = "CHART_TOOTH_IMAGE_SEQ",
+      sequenceName = "CHART_TOOTH_IMAGE_SEQ",
+      allocationSize = 1)
+  @Column(name = "CHART_TOOTH_IMAGE_ID", nullable = false)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "CHART_TOOTH_IMAGE_SEQ")
+  private Long chartToothImageId;
+
+  @JsonIgnore
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "CHART_ID", nullable = false)
+  private Chart chart;
+
+  @Enumerated(EnumType.STRING)
+  @Column(name = "SURFACE_KIND", nullable = false, length = 8)
+  private ToothSurfaceKind surfaceKind;
+
+  @Column(name = "TOOTH_NUMBER", nullable = false)
+  private Integer toothNumber;
+
+  @Column(name = "IMAGE_PATH", nullable = false)
+  private String imagePath;
+
+  public ChartToothImage(
+      Chart chart, ToothSurfaceKind surfaceKind, Integer toothNumber, String imagePath) {
+    this.chart = chart;
+    this.surfaceKind = surfaceKind;
+    this.toothNumber = toothNumber;
+    this.imagePath = imagePath;
+  }
+}
@@ -0,0 +1,8 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+/** Which coded chart field a tooth finding was parsed from */
+public enum FindingType {
+  TREATMENT_PLAN,
+  LESION_STATUS,
+  ICDAS
+}
@@ -0,0 +1,72 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Descriptor table of the 64 tooth image slots of a chart: the 32 permanent teeth in FDI
+ * numbering (11..18, 21..28, 31..38, 41..48) for each surface kind. Slots are named like the
+ * image fields of the API, teeth11..teeth48 and EC11..EC48.
+ */
+public final class ToothImageSlot {
+
+  public static final List<ToothImageSlot> ALL;
+
+  private static final Map<String, ToothImageSlot> BY_IMAGE_NAME = new HashMap<>();
+
+  static {
+    List<ToothImageSlot> slots = new ArrayList<>();
+    for (ToothSurfaceKind surfaceKind : ToothSurfaceKind.values()) {
+      for (int quadrant = 1; quadrant <= 4; quadrant++) {
+        for (int position = 1; position <= 8; position++) {
+          ToothImageSlot slot =
+              new ToothImageSlot(surfaceKind, quadrant * 10 + position, slots.size());
+          slots.add(slot);
+          BY_IMAGE_NAME.put(slot.getImageName(), slot);
+        }
+      }
+    }
+    ALL = Collections.unmodifiableList(slots);
+  }
+
+  private final ToothSurfaceKind surfaceKind;
+  private final int toothNumber;
+  private final String imageName;
+  private final int index;
+
+  private ToothImageSlot(ToothSurfaceKind surfaceKind, int toothNumber, int index) {
+    this.surfaceKind = surfaceKind;
+    this.toothNumber = toothNumber;
+    this.imageName = surfaceKind.getImagePrefix() + toothNumber;
+    this.index = index;
+  }
+
+  /** Returns the slot with the given image name (e.g. teeth11 or EC48), or null if none */
+  public static ToothImageSlot fromImageName(String imageName) {
+    return BY_IMAGE_NAME.get(imageName);
+  }
+
+  public static ToothImageSlot of(ToothSurfaceKind surfaceKind, int toothNumber) {
+    return fromImageName(surfaceKind.getImagePrefix() + toothNumber);
+  }
+
+  public ToothSurfaceKind getSurfaceKind() {
+    return surfaceKind;
+  }
+
+  public int getToothNumber() {
+    return toothNumber;
+  }
+
+  public String getImageName() {
+    return imageName;
+  }
+
+  /** Position of the slot in {@link #ALL}, which is also its tile in the chart sprite */
+  public int getIndex() {
+    return index;
+  }
+}
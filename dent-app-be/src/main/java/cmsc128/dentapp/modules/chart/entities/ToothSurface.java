@@ -0,0 +1,12 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+/** Surface of a tooth a finding applies to, as laid out in the chart's five-part tooth diagram */
+public enum ToothSurface {
+  TOP,
+  RIGHT,
+  BOTTOM,
+  LEFT,
+  CENTER,
+  // The finding was recorded for the tooth as a whole
+  WHOLE
+}
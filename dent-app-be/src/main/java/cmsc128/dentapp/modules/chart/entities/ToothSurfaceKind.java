@@ -0,0 +1,18 @@
+package cmsc128.dentapp.modules.chart.entities;
+
+/** Which drawing of a tooth an image is: the tooth itself or its extra conditions (EC) */
+public enum ToothSurfaceKind {
+  TEETH("teeth"),
+  EC("EC");
+
+  private final String imagePrefix;
+
+  ToothSurfaceKind(String imagePrefix) {
+    this.imagePrefix = imagePrefix;
+  }
+
+  /** Prefix of the image name used by the API, e.g. teeth11 or EC11 */
+  public String getImagePrefix() {
+    return imagePrefix;
+  }
+}
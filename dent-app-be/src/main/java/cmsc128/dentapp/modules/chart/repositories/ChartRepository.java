@@ -1,12 +1,79 @@
 package cmsc128.dentapp.modules.chart.repositories;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import cmsc128.dentapp.modules.chart.dto.ChartSummaryDTO;
 import cmsc128.dentapp.modules.chart.entities.Chart;
+import jakarta.persistence.LockModeType;
 
 @Repository
 public interface ChartRepository extends JpaRepository<Chart, Long> {
   Chart findByChartID(Long chartID);
-  //    Chart findByPatient_PatientID(Long patientID);
+
+  /**
+   * Loads the chart for an update whose version is bumped at commit even if only its tooth images
+   * change, failing if another update committed in the meantime.
+   */
+  @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+  @Query("SELECT c FROM CHART c WHERE c.chartID = :chartId")
+  Optional<Chart> findForUpdate(@Param("chartId") Long chartId);
+
+  /** Sprite columns are written only here and by the path updates below, see ChartSprite */
+  @Transactional
+  @Modifying
+  @Query(
+      "UPDATE CHART c SET c.sprite.path = :path, c.sprite.thumbnailPath = :thumbnailPath, c.sprite.cellWidth = :cellWidth, c.sprite.cellHeight = :cellHeight, c.sprite.columns = :columns WHERE c.chartID = :chartId")
+  int updateSprite(
+      @Param("chartId") Long chartId,
+      @Param("path") String path,
+      @Param("thumbnailPath") String thumbnailPath,
+      @Param("cellWidth") Integer cellWidth,
+      @Param("cellHeight") Integer cellHeight,
+      @Param("columns") Integer columns);
+
+  /** The patient's most recent chart */
+  Chart findTopByPatient_PatientIDOrderByChartIDDesc(Long patientID);
+
+  /** The patient's charts with ids below {@code beforeId}, newest first, without their images */
+  @Query(
+      "SELECT new cmsc128.dentapp.modules.chart.dto.ChartSummaryDTO(c.chartID, c.createdAt, c.version, c.sprite.thumbnailPath) FROM CHART c WHERE c.patient.patientID = :patientId AND c.chartID < :beforeId ORDER BY c.chartID DESC")
+  List<ChartSummaryDTO> findChartSummaries(
+      @Param("patientId") Long patientId, @Param("beforeId") Long beforeId, Pageable pageable);
+
+  /** (chartID, sprite path, thumbnail path) of charts after {@code afterId} that have a sprite */
+  @Query(
+      "SELECT c.chartID, c.sprite.path, c.sprite.thumbnailPath FROM CHART c WHERE c.chartID > :afterId AND c.sprite.path IS NOT NULL ORDER BY c.chartID")
+  List<Object[]> findSpritePathRows(@Param("afterId") Long afterId, Pageable pageable);
+
+  @Modifying
+  @Query(
+      "UPDATE CHART c SET c.sprite.path = :newPath WHERE c.chartID = :chartId AND c.sprite.path = :oldPath")
+  int updateSpritePath(
+      @Param("chartId") Long chartId,
+      @Param("oldPath") String oldPath,
+      @Param("newPath") String newPath);
+
+  @Modifying
+  @Query(
+      "UPDATE CHART c SET c.sprite.thumbnailPath = :newPath WHERE c.chartID = :chartId AND c.sprite.thumbnailPath = :oldPath")
+  int updateThumbnailPath(
+      @Param("chartId") Long chartId,
+      @Param("oldPath") String oldPath,
+      @Param("newPath") String newPath);
+
+  /** (sprite path, thumbnail path) of charts whose sprite or thumbnail is one of {@code paths} */
+  @Query(
+      "SELECT c.sprite.path, c.sprite.thumbnailPath FROM CHART c WHERE c.sprite.path IN :paths OR c.sprite.thumbnailPath IN :paths")
+  List<Object[]> findStoredSpritePaths(@Param("paths") Collection<String> paths);
 }
@@ -0,0 +1,28 @@
+package cmsc128.dentapp.modules.chart.repositories;
+
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import cmsc128.dentapp.modules.chart.entities.ChartToothFinding;
+
+@Repository
+public interface ChartToothFindingRepository extends JpaRepository<ChartToothFinding, Long> {
+
+  @Modifying
+  @Query("DELETE FROM CHART_TOOTH_FINDING f WHERE f.chart.chartID = :chartId")
+  int deleteByChartId(@Param("chartId") Long chartId);
+
+  /**
+   * Returns (findingId, chartId, findingType, toothNumber, code) rows after {@code afterId} in id
+   * order, for loading the in-memory index in chunks
+   */
+  @Query(
+      "SELECT f.chartToothFindingId, f.chart.chartID, f.findingType, f.toothNumber, f.code FROM CHART_TOOTH_FINDING f WHERE f.chartToothFindingId > :afterId ORDER BY f.chartToothFindingId")
+  List<Object[]> findIndexRows(@Param("afterId") Long afterId, Pageable pageable);
+}
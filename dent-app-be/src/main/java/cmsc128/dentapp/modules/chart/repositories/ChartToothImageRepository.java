@@ -0,0 +1,45 @@
+package cmsc128.dentapp.modules.chart.repositories;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import cmsc128.dentapp.modules.chart.entities.ChartToothImage;
+import cmsc128.dentapp.modules.chart.entities.ToothSurfaceKind;
+
+@Repository
+public interface ChartToothImageRepository extends JpaRepository<ChartToothImage, Long> {
+
+  @Query("SELECT t FROM CHART_TOOTH_IMAGE t WHERE t.chart.chartID = :chartId")
+  List<ChartToothImage> findByChartId(@Param("chartId") Long chartId);
+
+  @Query(
+      "SELECT t FROM CHART_TOOTH_IMAGE t WHERE t.chart.chartID = :chartId AND t.surfaceKind = :surfaceKind AND t.toothNumber = :toothNumber")
+  Optional<ChartToothImage> findToothImage(
+      @Param("chartId") Long chartId,
+      @Param("surfaceKind") ToothSurfaceKind surfaceKind,
+      @Param("toothNumber") Integer toothNumber);
+
+  /** (id, imagePath) of images after {@code afterId} in id order */
+  @Query(
+      "SELECT t.chartToothImageId, t.imagePath FROM CHART_TOOTH_IMAGE t WHERE t.chartToothImageId > :afterId ORDER BY t.chartToothImageId")
+  List<Object[]> findPathRows(@Param("afterId") Long afterId, Pageable pageable);
+
+  /** Moves the image to a new path unless it was replaced in the meantime */
+  @Modifying
+  @Query(
+      "UPDATE CHART_TOOTH_IMAGE t SET t.imagePath = :newPath WHERE t.chartToothImageId = :id AND t.imagePath = :oldPath")
+  int updateImagePath(
+      @Param("id") Long id, @Param("oldPath") String oldPath, @Param("newPath") String newPath);
+
+  /** Which of {@code paths} are stored as a tooth image */
+  @Query("SELECT t.imagePath FROM CHART_TOOTH_IMAGE t WHERE t.imagePath IN :paths")
+  List<String> findStoredPaths(@Param("paths") Collection<String> paths);
+}
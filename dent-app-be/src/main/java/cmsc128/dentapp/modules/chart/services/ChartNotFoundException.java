@@ -0,0 +1,8 @@
+package cmsc128.dentapp.modules.chart.services;
+
+/** The chart, or the tooth image of it that was asked for, does not exist */
+public class ChartNotFoundException extends RuntimeException {
+  public ChartNotFoundException(String message) {
+    super(message);
+  }
+}
@@ -1,14 +1,54 @@
 package cmsc128.dentapp.modules.chart.services;
 
+import java.util.Map;
+
 import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
 
 import cmsc128.dentapp.modules.chart.dto.AddChartDTO;
+import cmsc128.dentapp.modules.chart.dto.ChartCohortPage;
+import cmsc128.dentapp.modules.chart.dto.ChartHistoryPage;
+import cmsc128.dentapp.modules.chart.dto.PatchChartDTO;
 import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothImage;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
 
 @Service
 public interface ChartService {
   Chart saveChart(AddChartDTO addChartDTO);
 
+  /** Saves a chart whose tooth images arrive as multipart files keyed by image name */
+  Chart saveChart(AddChartDTO addChartDTO, Map<String, MultipartFile> images);
+
   Chart findByID(Long chartID);
-  //    Chart findByPatientID(Long patientID);
+
+  /** Throws ChartNotFoundException if the chart has no such image */
+  ChartToothImage findToothImage(Long chartID, String imageName);
+
+  /**
+   * Replaces one tooth image of the chart. Like {@link #patchChart}, throws
+   * OptimisticLockingFailureException if the chart is no longer at {@code version}.
+   */
+  ChartToothImage replaceToothImage(Long chartID, String imageName, byte[] image, Long version);
+
+  /**
+   * Applies a sparse update to an existing chart. Throws OptimisticLockingFailureException if the
+   * chart is no longer at the version the update was based on.
+   */
+  Chart patchChart(Long chartID, PatchChartDTO patchChartDTO);
+
+  /**
+   * Charts with a finding of this type on any of {@code teeth} (comma-separated FDI numbers or
+   * molars, premolars, canines, incisors; all teeth if null) whose code is in {@code codes}
+   * (comma-separated) or numerically at least {@code minCode}, in pages of chart ids after {@code
+   * after}.
+   */
+  ChartCohortPage findCohort(
+      FindingType findingType, String teeth, String codes, Integer minCode, long after, int size);
+
+  /** The patient's most recent chart, or null if there is none */
+  Chart findByPatientID(Long patientID);
+
+  /** Summaries of the patient's charts with ids below {@code before} (all if null), newest first */
+  ChartHistoryPage findChartHistory(Long patientID, Long before, int size);
 }
@@ -9,7 +9,13 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 @Entity(name = "USER_SESSION")
-@Table(name = "USER_SESSION")
+@Table(
+    name = "USER_SESSION",
+    indexes = {
+      @Index(name = "USER_SESSION_REFRESH_TOKEN_HASH_IDX", columnList = "REFRESH_TOKEN_HASH"),
+      @Index(name = "USER_SESSION_EXPIRES_AT_IDX", columnList = "EXPIRES_AT"),
+      @Index(name = "USER_SESSION_INACTIVE_IDX", columnList = "IS_ACTIVE, REVOKED_AT")
+    })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -26,8 +32,9 @@ public class UserSession {
       foreignKey = @ForeignKey(name = "FK_USER_SESSION_USER"))
   private User user;
 
-  @Column(name = "REFRESH_TOKEN", nullable = false, length = 1000)
-  private String refreshToken;
+  // SHA-256 of the refresh token; the token itself is never stored
+  @Column(name = "REFRESH_TOKEN_HASH", nullable = false, length = 64)
+  private String refreshTokenHash;
 
   @Column(name = "IP_ADDRESS")
   private String ipAddress;
@@ -47,6 +54,9 @@ public class UserSession {
   @Column(name = "IS_ACTIVE", nullable = false)
   private Boolean isActive = true;
 
+  @Column(name = "REVOKED_AT")
+  private LocalDateTime revokedAt;
+
   @PrePersist
   protected void onCreate() {
     createdAt = LocalDateTime.now();
@@ -56,11 +66,6 @@ public class UserSession {
     }
   }
 
-  @PreUpdate
-  protected void onUpdate() {
-    lastAccessed = LocalDateTime.now();
-  }
-
   public boolean isExpired() {
     return LocalDateTime.now().isAfter(expiresAt);
   }
@@ -71,5 +76,6 @@ public class UserSession {
 
   public void deactivate() {
     this.isActive = false;
+    this.revokedAt = LocalDateTime.now();
   }
 }
@@ -1,9 +1,11 @@
 package cmsc128.dentapp.modules.session.repositories;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -18,7 +20,7 @@ public interface UserSessionRepository extends JpaRepository<UserSession, String
 
   Optional<UserSession> findBySessionIdAndIsActiveTrue(String sessionId);
 
-  Optional<UserSession> findByRefreshTokenAndIsActiveTrue(String refreshToken);
+  Optional<UserSession> findByRefreshTokenHashAndIsActiveTrue(String refreshTokenHash);
 
   List<UserSession> findByUserAndIsActiveTrueOrderByCreatedAtDesc(User user);
 
@@ -27,17 +29,41 @@ public interface UserSessionRepository extends JpaRepository<UserSession, String
   @Query("SELECT us FROM USER_SESSION us WHERE us.user.userId = :userId AND us.isActive = true")
   List<UserSession> findActiveSessionsByUserId(@Param("userId") Long userId);
 
+  @Query(
+      "SELECT us.sessionId FROM USER_SESSION us WHERE us.user.userId = :userId AND us.isActive = true")
+  List<String> findActiveSessionIdsByUserId(@Param("userId") Long userId);
+
   @Modifying
-  @Query("UPDATE USER_SESSION us SET us.isActive = false WHERE us.user.userId = :userId")
-  int deactivateAllSessionsForUser(@Param("userId") Long userId);
+  @Query(
+      "UPDATE USER_SESSION us SET us.isActive = false, us.revokedAt = :now WHERE us.user.userId = :userId AND us.isActive = true")
+  int deactivateAllSessionsForUser(
+      @Param("userId") Long userId, @Param("now") LocalDateTime now);
 
   @Modifying
-  @Query("UPDATE USER_SESSION us SET us.isActive = false WHERE us.sessionId = :sessionId")
-  int deactivateSession(@Param("sessionId") String sessionId);
+  @Query(
+      "UPDATE USER_SESSION us SET us.isActive = false, us.revokedAt = :now WHERE us.sessionId = :sessionId")
+  int deactivateSession(@Param("sessionId") String sessionId, @Param("now") LocalDateTime now);
+
+  /** Returns (sessionId, revokedAt) pairs of sessions revoked after {@code since} */
+  @Query(
+      "SELECT us.sessionId, us.revokedAt FROM USER_SESSION us WHERE us.isActive = false AND us.revokedAt > :since")
+  List<Object[]> findRevokedSessionsSince(@Param("since") LocalDateTime since);
+
+  /**
+   * Sessions that can be deleted: expired ones, and inactive ones revoked before {@code
+   * revokedBefore}. Recently revoked rows are kept so the revocation index can be rebuilt from
+   * them after a restart.
+   */
+  @Query(
+      "SELECT us.sessionId FROM USER_SESSION us WHERE us.expiresAt < :now OR (us.isActive = false AND (us.revokedAt IS NULL OR us.revokedAt < :revokedBefore)) ORDER BY us.sessionId")
+  List<String> findReapableSessionIds(
+      @Param("now") LocalDateTime now,
+      @Param("revokedBefore") LocalDateTime revokedBefore,
+      Pageable pageable);
 
   @Modifying
-  @Query("DELETE FROM USER_SESSION us WHERE us.expiresAt < :now OR us.isActive = false")
-  int cleanupExpiredAndInactiveSessions(@Param("now") LocalDateTime now);
+  @Query("DELETE FROM USER_SESSION us WHERE us.sessionId IN :sessionIds")
+  int deleteBySessionIdIn(@Param("sessionIds") Collection<String> sessionIds);
 
   @Query(
       "SELECT COUNT(us) FROM USER_SESSION us WHERE us.user.userId = :userId AND us.isActive = true")
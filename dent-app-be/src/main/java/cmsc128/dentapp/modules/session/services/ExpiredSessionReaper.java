@@ -0,0 +1,139 @@
+package cmsc128.dentapp.modules.session.services;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.OptionalInt;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import cmsc128.dentapp.Utils.JwtTokenUtil;
+import cmsc128.dentapp.modules.session.repositories.UserSessionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Background job that removes expired and inactive USER_SESSION rows. Rows are deleted by primary
+ * key in bounded chunks, each in its own short transaction, with a pause between chunks so a
+ * large backlog never holds locks for long.
+ */
+@Component
+@Slf4j
+public class ExpiredSessionReaper {
+
+  private final UserSessionRepository userSessionRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final int chunkSize;
+  private final long pauseMillis;
+  private final long revocationWindowSeconds;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final AtomicLong lastPassRemoved = new AtomicLong();
+  private final AtomicLong lastPassMillis = new AtomicLong();
+  private final Counter removedCounter;
+  private final Timer passTimer;
+
+  public ExpiredSessionReaper(
+      UserSessionRepository userSessionRepository,
+      TransactionTemplate transactionTemplate,
+      JwtTokenUtil jwtTokenUtil,
+      MeterRegistry meterRegistry,
+      @Value("${app.session.reaper.chunk-size:500}") int chunkSize,
+      @Value("${app.session.reaper.pause-ms:200}") long pauseMillis) {
+    this.userSessionRepository = userSessionRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.chunkSize = chunkSize;
+    this.pauseMillis = pauseMillis;
+    this.revocationWindowSeconds = jwtTokenUtil.getAccessTokenExpirationTime() / 1000;
+
+    this.removedCounter =
+        Counter.builder("dentapp.session.reaper.removed")
+            .description("Expired or inactive sessions deleted by the reaper")
+            .register(meterRegistry);
+    this.passTimer =
+        Timer.builder("dentapp.session.reaper.pass")
+            .description("Duration of a complete reaper pass")
+            .register(meterRegistry);
+    Gauge.builder("dentapp.session.reaper.last.removed", lastPassRemoved, AtomicLong::get)
+        .description("Sessions deleted by the most recent reaper pass")
+        .register(meterRegistry);
+    Gauge.builder("dentapp.session.reaper.last.duration", lastPassMillis, AtomicLong::get)
+        .description("Duration of the most recent reaper pass in milliseconds")
+        .baseUnit("milliseconds")
+        .register(meterRegistry);
+  }
+
+  @Scheduled(
+      fixedDelayString = "${app.session.reaper.interval:3600000}",
+      initialDelayString = "${app.session.reaper.initial-delay:60000}")
+  public void scheduledPass() {
+    reap();
+  }
+
+  /**
+   * Runs one pass and returns the number of sessions removed, or an empty result without doing
+   * anything if another pass is already in progress.
+   */
+  public OptionalInt reap() {
+    if (!running.compareAndSet(false, true)) {
+      return OptionalInt.empty();
+    }
+
+    long start = System.nanoTime();
+    int removed = 0;
+    try {
+      LocalDateTime now = LocalDateTime.now();
+      while (true) {
+        List<String> chunk = transactionTemplate.execute(status -> deleteChunk(now));
+        removed += chunk.size();
+        removedCounter.increment(chunk.size());
+
+        if (chunk.size() < chunkSize) {
+          break;
+        }
+
+        try {
+          Thread.sleep(pauseMillis);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          break;
+        }
+      }
+    } catch (Exception e) {
+      log.warn(
+          "Session reaper pass stopped after removing {} sessions: {}", removed, e.getMessage());
+    } finally {
+      long elapsedNanos = System.nanoTime() - start;
+      passTimer.record(elapsedNanos, TimeUnit.NANOSECONDS);
+      lastPassRemoved.set(removed);
+      lastPassMillis.set(TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+      running.set(false);
+    }
+
+    if (removed > 0) {
+      log.info("Session reaper removed {} sessions in {} ms", removed, lastPassMillis.get());
+    }
+    return OptionalInt.of(removed);
+  }
+
+  private List<String> deleteChunk(LocalDateTime now) {
+    // Revoked sessions stay until their access tokens have expired, see SessionRevocationIndex
+    LocalDateTime revokedBefore = now.minusSeconds(revocationWindowSeconds);
+    List<String> sessionIds =
+        userSessionRepository.findReapableSessionIds(
+            now, revokedBefore, PageRequest.of(0, chunkSize));
+    if (!sessionIds.isEmpty()) {
+      userSessionRepository.deleteBySessionIdIn(sessionIds);
+    }
+    return sessionIds;
+  }
+}
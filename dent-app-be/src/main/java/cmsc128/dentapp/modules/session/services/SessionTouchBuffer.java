@@ -0,0 +1,71 @@
+package cmsc128.dentapp.modules.session.services;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind buffer for USER_SESSION.LAST_ACCESSED. Touches are coalesced per sessionId in
+ * memory and written in a single JDBC batch every few seconds, so refreshing a token does not
+ * have to wait for a row update.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SessionTouchBuffer {
+
+  private static final String TOUCH_SQL =
+      "UPDATE USER_SESSION SET LAST_ACCESSED = ? WHERE SESSION_ID = ? AND LAST_ACCESSED < ?";
+
+  private final JdbcTemplate jdbcTemplate;
+
+  private final Map<String, LocalDateTime> pendingTouches = new ConcurrentHashMap<>();
+
+  /** Records that the session was used now; the database is updated on the next flush */
+  public void touch(String sessionId) {
+    pendingTouches.put(sessionId, LocalDateTime.now());
+  }
+
+  @Scheduled(fixedDelayString = "${app.session.touch-flush-interval:5000}")
+  public void flush() {
+    if (pendingTouches.isEmpty()) {
+      return;
+    }
+
+    List<Object[]> batch = new ArrayList<>(pendingTouches.size());
+    for (String sessionId : pendingTouches.keySet()) {
+      LocalDateTime lastAccessed = pendingTouches.remove(sessionId);
+      if (lastAccessed != null) {
+        Timestamp timestamp = Timestamp.valueOf(lastAccessed);
+        batch.add(new Object[] {timestamp, sessionId, timestamp});
+      }
+    }
+
+    try {
+      jdbcTemplate.batchUpdate(TOUCH_SQL, batch);
+    } catch (Exception e) {
+      log.warn("Failed to flush {} session touches: {}", batch.size(), e.getMessage());
+
+      // Keep the touches for the next flush unless a newer one has arrived in the meantime
+      for (Object[] row : batch) {
+        pendingTouches.putIfAbsent((String) row[1], ((Timestamp) row[0]).toLocalDateTime());
+      }
+    }
+  }
+
+  @PreDestroy
+  public void flushOnShutdown() {
+    flush();
+  }
+}
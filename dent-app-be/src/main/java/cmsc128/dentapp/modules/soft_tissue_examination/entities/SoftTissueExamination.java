@@ -9,6 +9,13 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 
 @Entity(name = "SOFT_TISSUE_EXAMINATION")
+@Table(
+    indexes = {
+      @Index(name = "STE_MOUTH_IMAGE_PATH_IDX", columnList = "MOUTH_IMAGE_PATH"),
+      @Index(name = "STE_NECK_IMAGE_PATH_IDX", columnList = "NECK_IMAGE_PATH"),
+      @Index(name = "STE_TONGUE_IMAGE_PATH_IDX", columnList = "TONGUE_IMAGE_PATH"),
+      @Index(name = "STE_UNDER_TONGUE_IMAGE_PATH_IDX", columnList = "UNDER_TONGUE_IMAGE_PATH")
+    })
 @Getter
 @Setter
 @NoArgsConstructor
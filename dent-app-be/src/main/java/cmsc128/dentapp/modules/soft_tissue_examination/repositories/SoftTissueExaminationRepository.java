@@ -1,6 +1,13 @@
 package cmsc128.dentapp.modules.soft_tissue_examination.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import cmsc128.dentapp.modules.soft_tissue_examination.entities.SoftTissueExamination;
@@ -10,4 +17,23 @@ public interface SoftTissueExaminationRepository
     extends JpaRepository<SoftTissueExamination, Long> {
   //    List<SoftTissueExamination> findByPatient_PatientID(Long patientId);
   SoftTissueExamination findTopByOrderBySteIdDesc();
+
+  /** (steId, mouth, neck, tongue, under tongue image paths) after {@code afterId} in id order */
+  @Query(
+      "SELECT s.steId, s.mouthImagePath, s.neckImagePath, s.tongueImagePath, s.underTongueImagePath FROM SOFT_TISSUE_EXAMINATION s WHERE s.steId > :afterId ORDER BY s.steId")
+  List<Object[]> findImagePathRows(@Param("afterId") Long afterId, Pageable pageable);
+
+  /** Replaces {@code oldPath} in whichever image path column holds it */
+  @Modifying
+  @Query(
+      "UPDATE SOFT_TISSUE_EXAMINATION s SET s.mouthImagePath = CASE WHEN s.mouthImagePath = :oldPath THEN :newPath ELSE s.mouthImagePath END, s.neckImagePath = CASE WHEN s.neckImagePath = :oldPath THEN :newPath ELSE s.neckImagePath END, s.tongueImagePath = CASE WHEN s.tongueImagePath = :oldPath THEN :newPath ELSE s.tongueImagePath END, s.underTongueImagePath = CASE WHEN s.underTongueImagePath = :oldPath THEN :newPath ELSE s.underTongueImagePath END WHERE s.steId = :steId AND (s.mouthImagePath = :oldPath OR s.neckImagePath = :oldPath OR s.tongueImagePath = :oldPath OR s.underTongueImagePath = :oldPath)")
+  int updateImagePath(
+      @Param("steId") Long steId,
+      @Param("oldPath") String oldPath,
+      @Param("newPath") String newPath);
+
+  /** The four image paths of examinations that hold any of {@code paths} */
+  @Query(
+      "SELECT s.mouthImagePath, s.neckImagePath, s.tongueImagePath, s.underTongueImagePath FROM SOFT_TISSUE_EXAMINATION s WHERE s.mouthImagePath IN :paths OR s.neckImagePath IN :paths OR s.tongueImagePath IN :paths OR s.underTongueImagePath IN :paths")
+  List<Object[]> findStoredImagePaths(@Param("paths") Collection<String> paths);
 }
@@ -0,0 +1,333 @@
+package cmsc128.dentapp.modules.storage.controllers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.HandlerMapping;
+
+import cmsc128.dentapp.modules.storage.services.BlobInfo;
+import cmsc128.dentapp.modules.storage.services.BlobStore;
+import cmsc128.dentapp.modules.storage.services.ContentAddressedStore;
+import cmsc128.dentapp.modules.storage.services.ImageCache;
+import cmsc128.dentapp.modules.storage.services.ImageOptimizer;
+import cmsc128.dentapp.modules.storage.services.UploadAccessPolicy;
+import cmsc128.dentapp.modules.storage.services.UploadGarbageCollector;
+import cmsc128.dentapp.modules.storage.services.UploadPathLayout;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Serves uploaded images under /uploads/**. Content-addressed blobs are named by the hash of their
+ * bytes, so they never change and are sent with a year-long immutable Cache-Control. Other files
+ * keep their name when ImageOptimizer recompresses them, so clients revalidate those. Responses
+ * carry a strong ETag and Last-Modified, conditional requests are answered with 304, single byte
+ * ranges with 206. With the local backend the file body is handed to the container's sendfile
+ * support or copied with FileChannel.transferTo instead of through the heap; other backends are
+ * streamed. Small files are served from the {@link ImageCache} when the cached copy has the size
+ * of the stored file. PNGs that have a WebP derivative are answered with it when the client lists
+ * image/webp in Accept.
+ */
+@RestController
+public class ImageController {
+
+  private static final String IMMUTABLE = "private, max-age=31536000, immutable";
+  private static final String REVALIDATE = "private, no-cache";
+
+  private static final Pattern SINGLE_RANGE = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+  private final BlobStore blobStore;
+  private final UploadAccessPolicy accessPolicy;
+  private final ImageCache imageCache;
+  private final ImageOptimizer imageOptimizer;
+  private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+  public ImageController(
+      BlobStore blobStore,
+      UploadAccessPolicy accessPolicy,
+      ImageCache imageCache,
+      ImageOptimizer imageOptimizer) {
+    this.blobStore = blobStore;
+    this.accessPolicy = accessPolicy;
+    this.imageCache = imageCache;
+    this.imageOptimizer = imageOptimizer;
+  }
+
+  @RequestMapping(
+      path = {"/uploads/**"},
+      method = {RequestMethod.GET, RequestMethod.HEAD})
+  public void serve(HttpServletRequest request, HttpServletResponse response) throws IOException {
+    String pattern =
+        (String) request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    String path =
+        (String) request.getAttribute(HandlerMapping.PATH_WITHIN_HANDLER_MAPPING_ATTRIBUTE);
+    String requestedPath = pathMatcher.extractPathWithinPattern(pattern, path);
+
+    if (!isServable(requestedPath)) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    // Checked before the file is looked up, so a 404 does not tell who may not read it that it
+    // exists. The sharded location of a legacy path is in the same patient folder.
+    if (!accessPolicy.canRead(
+        SecurityContextHolder.getContext().getAuthentication(), requestedPath)) {
+      response.sendError(HttpServletResponse.SC_FORBIDDEN);
+      return;
+    }
+
+    String relativePath = requestedPath;
+    Optional<BlobInfo> blob = blobStore.stat(relativePath);
+    if (blob.isEmpty() && UploadPathLayout.isLegacy(requestedPath)) {
+      // A legacy URL whose file has already been moved into the sharded layout
+      relativePath = UploadPathLayout.toSharded(requestedPath);
+      blob = blobStore.stat(relativePath);
+    }
+    if (blob.isEmpty()) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+
+    Optional<String> webpPath = imageOptimizer.webpPath(relativePath);
+    if (webpPath.isPresent()) {
+      response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+      Optional<BlobInfo> webp =
+          acceptsWebp(request) ? blobStore.stat(webpPath.get()) : Optional.empty();
+      if (webp.isPresent()) {
+        // The optimizer only keeps derivatives smaller than the PNG
+        relativePath = webpPath.get();
+        blob = webp;
+      }
+    }
+
+    long length = blob.get().getSize();
+    long lastModified = blob.get().getLastModified();
+    String etag = etag(relativePath, length, lastModified);
+
+    response.setHeader(HttpHeaders.ETAG, etag);
+    response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+    response.setHeader(
+        HttpHeaders.CACHE_CONTROL,
+        ContentAddressedStore.isBlobPath(relativePath) ? IMMUTABLE : REVALIDATE);
+    response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+    if (isNotModified(request, etag, lastModified)) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return;
+    }
+
+    long start = 0;
+    long end = length - 1;
+    String range = request.getHeader(HttpHeaders.RANGE);
+    if (range != null && rangeApplies(request, etag, lastModified)) {
+      long[] bounds = parseRange(range, length);
+      if (bounds == null) {
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + length);
+        response.sendError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value());
+        return;
+      }
+      start = bounds[0];
+      end = bounds[1];
+      response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+      response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+    }
+
+    response.setContentType(
+        relativePath.endsWith(ImageOptimizer.WEBP_SUFFIX)
+            ? "image/webp"
+            : MediaTypeFactory.getMediaType(relativePath)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString());
+    response.setContentLengthLong(end - start + 1);
+
+    if (RequestMethod.HEAD.name().equals(request.getMethod()) || length == 0) {
+      return;
+    }
+
+    if (imageCache.accepts(length)) {
+      String storedPath = relativePath;
+      ByteBuffer data = imageCache.get(storedPath, () -> readAll(storedPath));
+      // ImageOptimizer rewrites a file before it invalidates its entry, so for a moment the cached
+      // bytes can differ from the file the headers describe; such requests read the file instead
+      if (data.remaining() == length) {
+        data.position((int) start).limit((int) end + 1);
+        WritableByteChannel target = Channels.newChannel(response.getOutputStream());
+        while (data.hasRemaining()) {
+          target.write(data);
+        }
+        return;
+      }
+    }
+
+    Optional<Path> localFile = blobStore.localPath(relativePath);
+    if (localFile.isEmpty()) {
+      // Pack files and buckets are streamed; only the requested range is read
+      try (InputStream in = blobStore.open(relativePath, start, end - start + 1)) {
+        in.transferTo(response.getOutputStream());
+      }
+      return;
+    }
+
+    Path file = localFile.get();
+    if (Boolean.TRUE.equals(request.getAttribute("org.apache.tomcat.sendfile.support"))) {
+      // Tomcat writes the file straight from the page cache once this handler returns
+      request.setAttribute("org.apache.tomcat.sendfile.filename", file.toString());
+      request.setAttribute("org.apache.tomcat.sendfile.start", start);
+      request.setAttribute("org.apache.tomcat.sendfile.end", end + 1);
+      return;
+    }
+
+    transfer(file, start, end - start + 1, response.getOutputStream());
+  }
+
+  /** Rejects keys that leave the upload root, temporary uploads and quarantined files */
+  private static boolean isServable(String relativePath) {
+    Path key = Paths.get(relativePath).normalize();
+    return !relativePath.isEmpty()
+        && !key.isAbsolute()
+        && !key.startsWith("..")
+        && !relativePath.startsWith(ContentAddressedStore.ROOT + "/tmp/")
+        && !relativePath.startsWith(UploadGarbageCollector.QUARANTINE_ROOT + "/")
+        && !relativePath.contains(".tmp-");
+  }
+
+  private byte[] readAll(String relativePath) throws IOException {
+    try (InputStream in = blobStore.open(relativePath)) {
+      return in.readAllBytes();
+    }
+  }
+
+  /** Content-addressed blobs are tagged by their hash, other files by size and mtime */
+  private static String etag(String relativePath, long length, long lastModified) {
+    if (ContentAddressedStore.isBlobPath(relativePath)) {
+      String fileName = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+      return "\"" + fileName.substring(0, fileName.indexOf('.')) + "\"";
+    }
+    return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+  }
+
+  /** Only an explicit image/webp in Accept counts; a wildcard does not */
+  static boolean acceptsWebp(HttpServletRequest request) {
+    String accept = request.getHeader(HttpHeaders.ACCEPT);
+    if (accept == null || !accept.contains("image/webp")) {
+      return false;
+    }
+    try {
+      return MediaType.parseMediaTypes(accept).stream()
+          .anyMatch(
+              type ->
+                  "image".equals(type.getType())
+                      && "webp".equals(type.getSubtype())
+                      && type.getQualityValue() > 0);
+    } catch (InvalidMediaTypeException e) {
+      return false;
+    }
+  }
+
+  static boolean isNotModified(HttpServletRequest request, String etag, long lastModified) {
+    String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+    if (ifNoneMatch != null) {
+      return matchesAny(ifNoneMatch, etag);
+    }
+
+    long ifModifiedSince = dateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+    // HTTP dates have one-second precision
+    return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+  }
+
+  /** A Range is only honoured if If-Range, when present, still matches the current file */
+  private static boolean rangeApplies(
+      HttpServletRequest request, String etag, long lastModified) {
+    String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+    if (ifRange == null) {
+      return true;
+    }
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(etag);
+    }
+    long date = dateHeader(request, HttpHeaders.IF_RANGE);
+    return date >= 0 && lastModified / 1000 == date / 1000;
+  }
+
+  static boolean matchesAny(String header, String etag) {
+    for (String candidate : header.split(",")) {
+      String tag = candidate.trim();
+      if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static long dateHeader(HttpServletRequest request, String name) {
+    try {
+      return request.getDateHeader(name);
+    } catch (IllegalArgumentException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parses a single "bytes=a-b", "bytes=a-" or "bytes=-n" range into inclusive bounds, or returns
+   * null if it cannot be satisfied. Multi-range requests are not supported.
+   */
+  static long[] parseRange(String header, long length) {
+    Matcher matcher = SINGLE_RANGE.matcher(header.trim());
+    if (!matcher.matches() || length == 0) {
+      return null;
+    }
+
+    String first = matcher.group(1);
+    String last = matcher.group(2);
+    try {
+      if (first.isEmpty()) {
+        if (last.isEmpty()) {
+          return null;
+        }
+        long suffix = Long.parseLong(last);
+        return suffix == 0 ? null : new long[] {Math.max(0, length - suffix), length - 1};
+      }
+
+      long start = Long.parseLong(first);
+      long end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+      return start >= length || start > end ? null : new long[] {start, end};
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  private static void transfer(Path file, long position, long count, OutputStream out)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      WritableByteChannel target = Channels.newChannel(out);
+      long sent = 0;
+      while (sent < count) {
+        long transferred = channel.transferTo(position + sent, count - sent, target);
+        if (transferred <= 0) {
+          break;
+        }
+        sent += transferred;
+      }
+    }
+  }
+}
@@ -0,0 +1,163 @@
+package cmsc128.dentapp.modules.storage.controllers;
+
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import cmsc128.dentapp.modules.storage.entities.ClinicalFile;
+import cmsc128.dentapp.modules.storage.services.ResumableUpload;
+import cmsc128.dentapp.modules.storage.services.ResumableUploadService;
+import cmsc128.dentapp.modules.storage.services.UploadAccessPolicy;
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * Resumable uploads for large clinical files (radiographs, photos), following tus: POST creates an
+ * upload with its Upload-Length, HEAD reports the Upload-Offset received so far, PATCH appends a
+ * chunk of application/offset+octet-stream at that offset, and POST .../complete stores the file
+ * as a CLINICAL_FILE of the patient and returns its clinical_file_id and image_path. After a
+ * dropped connection the client asks HEAD for the offset and continues from there. Only users who
+ * may write the patient's files (see UploadAccessPolicy) can start an upload for them.
+ */
+@RestController
+@RequestMapping(path = {"/resumable-uploads"})
+public class ResumableUploadController {
+
+  private static final String UPLOAD_LENGTH = "Upload-Length";
+  private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+  private final ResumableUploadService resumableUploadService;
+  private final UploadAccessPolicy uploadAccessPolicy;
+
+  public ResumableUploadController(
+      ResumableUploadService resumableUploadService, UploadAccessPolicy uploadAccessPolicy) {
+    this.resumableUploadService = resumableUploadService;
+    this.uploadAccessPolicy = uploadAccessPolicy;
+  }
+
+  @PostMapping
+  public ResponseEntity<?> create(
+      Authentication authentication,
+      @RequestHeader(UPLOAD_LENGTH) long length,
+      @RequestParam("patient_id") Long patientId,
+      @RequestParam("image_type") String imageType,
+      @RequestParam("file_name") String fileName) {
+    if (!uploadAccessPolicy.canWrite(authentication, patientId)) {
+      Map<String, Object> errorResponse = new HashMap<>();
+      errorResponse.put("success", false);
+      errorResponse.put("error", "Cannot upload files for patient " + patientId);
+      return ResponseEntity.status(HttpStatus.FORBIDDEN).body(errorResponse);
+    }
+
+    try {
+      ResumableUpload upload =
+          resumableUploadService.create(
+              authentication.getName(), patientId, imageType, fileName, length);
+
+      Map<String, Object> response = new HashMap<>();
+      response.put("success", true);
+      response.put("upload_id", upload.getId());
+      return ResponseEntity.created(URI.create("/resumable-uploads/" + upload.getId()))
+          .header(UPLOAD_OFFSET, "0")
+          .body(response);
+    } catch (Exception e) {
+      return error(e);
+    }
+  }
+
+  @RequestMapping(
+      path = {"/{uploadId}"},
+      method = {RequestMethod.HEAD})
+  public ResponseEntity<?> status(Principal principal, @PathVariable String uploadId) {
+    try {
+      ResumableUpload upload = resumableUploadService.get(principal.getName(), uploadId);
+      return ResponseEntity.ok()
+          .header(UPLOAD_OFFSET, Long.toString(resumableUploadService.offset(upload)))
+          .header(UPLOAD_LENGTH, Long.toString(upload.getLength()))
+          .header(HttpHeaders.CACHE_CONTROL, "no-store")
+          .build();
+    } catch (Exception e) {
+      return ResponseEntity.status(status(e)).build();
+    }
+  }
+
+  @PatchMapping(
+      path = {"/{uploadId}"},
+      consumes = {"application/offset+octet-stream"})
+  public ResponseEntity<?> append(
+      Principal principal,
+      @PathVariable String uploadId,
+      @RequestHeader(UPLOAD_OFFSET) long offset,
+      HttpServletRequest request) {
+    try {
+      long newOffset =
+          resumableUploadService.append(
+              principal.getName(), uploadId, offset, request.getInputStream());
+      return ResponseEntity.noContent().header(UPLOAD_OFFSET, Long.toString(newOffset)).build();
+    } catch (Exception e) {
+      return error(e);
+    }
+  }
+
+  @PostMapping(path = {"/{uploadId}/complete"})
+  public ResponseEntity<?> complete(Principal principal, @PathVariable String uploadId) {
+    try {
+      ClinicalFile clinicalFile = resumableUploadService.complete(principal.getName(), uploadId);
+
+      Map<String, Object> response = new HashMap<>();
+      response.put("success", true);
+      response.put("clinical_file_id", clinicalFile.getClinicalFileId());
+      response.put("image_path", clinicalFile.getFilePath());
+      return ResponseEntity.ok(response);
+    } catch (Exception e) {
+      return error(e);
+    }
+  }
+
+  @DeleteMapping(path = {"/{uploadId}"})
+  public ResponseEntity<?> cancel(Principal principal, @PathVariable String uploadId) {
+    try {
+      resumableUploadService.cancel(principal.getName(), uploadId);
+      return ResponseEntity.noContent().build();
+    } catch (Exception e) {
+      return error(e);
+    }
+  }
+
+  private static ResponseEntity<?> error(Exception e) {
+    Map<String, Object> errorResponse = new HashMap<>();
+    errorResponse.put("success", false);
+    errorResponse.put("error", e.getMessage());
+    return ResponseEntity.status(status(e)).body(errorResponse);
+  }
+
+  private static HttpStatus status(Exception e) {
+    if (e instanceof MaxUploadSizeExceededException) {
+      return HttpStatus.PAYLOAD_TOO_LARGE;
+    } else if (e instanceof IllegalArgumentException) {
+      return HttpStatus.BAD_REQUEST;
+    } else if (e instanceof IllegalStateException) {
+      // Wrong offset, a chunk already in progress, or not all bytes received yet
+      return HttpStatus.CONFLICT;
+    } else if (e instanceof NoSuchElementException) {
+      return HttpStatus.NOT_FOUND;
+    }
+    return HttpStatus.INTERNAL_SERVER_ERROR;
+  }
+}
@@ -0,0 +1,61 @@
+package cmsc128.dentapp.modules.storage.entities;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import cmsc128.dentapp.modules.patient.entities.Patient;
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A large clinical file (radiograph, photo, scan) stored for a patient through a resumable
+ * upload. FILE_PATH is the path under /uploads, so the file is referenced like any other image.
+ */
+@Entity(name = "CLINICAL_FILE")
+@Table(
+    indexes = {
+      @Index(name = "CLINICAL_FILE_PATIENT_IDX", columnList = "PATIENT_ID"),
+      @Index(name = "CLINICAL_FILE_PATH_IDX", columnList = "FILE_PATH")
+    })
+@Data
+@NoArgsConstructor
+public class ClinicalFile {
+  @Id
+  @SequenceGenerator(
+      name = "CLINICAL_FILE_SEQ",
+      sequenceName = "CLINICAL_FILE_SEQ",
+      allocationSize = 1)
+  @Column(name = "CLINICAL_FILE_ID", nullable = false)
+  @GeneratedValue(strategy = GenerationType.AUTO, generator = "CLINICAL_FILE_SEQ")
+  private Long clinicalFileId;
+
+  @JsonIgnore
+  @ToString.Exclude
+  @EqualsAndHashCode.Exclude
+  @ManyToOne(fetch = FetchType.LAZY)
+  @JoinColumn(name = "PATIENT_ID", nullable = false)
+  private Patient patient;
+
+  @Column(name = "IMAGE_TYPE", nullable = false, length = 40)
+  private String imageType;
+
+  // The name the file had on the uploading device
+  @Column(name = "FILE_NAME", nullable = false)
+  private String fileName;
+
+  @Column(name = "FILE_PATH", nullable = false)
+  private String filePath;
+
+  @Column(name = "SIZE_BYTES", nullable = false)
+  private Long sizeBytes;
+
+  @Column(name = "UPLOADED_BY", nullable = false)
+  private String uploadedBy;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private LocalDateTime createdAt;
+}
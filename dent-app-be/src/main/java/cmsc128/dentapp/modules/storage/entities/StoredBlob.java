@@ -0,0 +1,35 @@
+package cmsc128.dentapp.modules.storage.entities;
+
+import java.time.LocalDateTime;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * A unique file in the content-addressed store, keyed by the SHA-256 of its bytes. REF_COUNT is
+ * the number of records (e.g. chart tooth images) that point at it.
+ */
+@Entity(name = "STORED_BLOB")
+@Data
+@NoArgsConstructor
+public class StoredBlob {
+  @Id
+  @Column(name = "CONTENT_HASH", nullable = false, length = 64)
+  private String contentHash;
+
+  @Column(name = "BLOB_PATH", nullable = false)
+  private String blobPath;
+
+  @Column(name = "SIZE_BYTES", nullable = false)
+  private Long sizeBytes;
+
+  @Column(name = "REF_COUNT", nullable = false)
+  private Integer refCount;
+
+  @Column(name = "CREATED_AT", nullable = false)
+  private LocalDateTime createdAt;
+
+  @Column(name = "UPDATED_AT", nullable = false)
+  private LocalDateTime updatedAt;
+}
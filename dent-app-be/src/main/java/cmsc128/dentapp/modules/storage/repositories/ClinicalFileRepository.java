@@ -0,0 +1,25 @@
+package cmsc128.dentapp.modules.storage.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import cmsc128.dentapp.modules.storage.entities.ClinicalFile;
+
+@Repository
+public interface ClinicalFileRepository extends JpaRepository<ClinicalFile, Long> {
+
+  /** (id, filePath) of clinical files after {@code afterId} in id order */
+  @Query(
+      "SELECT f.clinicalFileId, f.filePath FROM CLINICAL_FILE f WHERE f.clinicalFileId > :afterId ORDER BY f.clinicalFileId")
+  List<Object[]> findPathRows(@Param("afterId") Long afterId, Pageable pageable);
+
+  /** Which of {@code paths} are stored as a clinical file */
+  @Query("SELECT f.filePath FROM CLINICAL_FILE f WHERE f.filePath IN :paths")
+  List<String> findStoredPaths(@Param("paths") Collection<String> paths);
+}
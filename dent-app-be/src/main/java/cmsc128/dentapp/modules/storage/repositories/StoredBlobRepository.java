@@ -0,0 +1,56 @@
+package cmsc128.dentapp.modules.storage.repositories;
+
+import java.time.LocalDateTime;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import cmsc128.dentapp.modules.storage.entities.StoredBlob;
+
+@Repository
+public interface StoredBlobRepository extends JpaRepository<StoredBlob, String> {
+
+  /** Returns 0 if no blob with this hash is stored yet */
+  @Transactional
+  @Modifying
+  @Query(
+      "UPDATE STORED_BLOB b SET b.refCount = b.refCount + :references, b.updatedAt = :now WHERE b.contentHash = :hash")
+  int addReferences(
+      @Param("hash") String hash,
+      @Param("references") int references,
+      @Param("now") LocalDateTime now);
+
+  @Transactional
+  @Modifying
+  @Query(
+      "UPDATE STORED_BLOB b SET b.refCount = b.refCount - :references, b.updatedAt = :now WHERE b.contentHash = :hash AND b.refCount >= :references")
+  int removeReferences(
+      @Param("hash") String hash,
+      @Param("references") int references,
+      @Param("now") LocalDateTime now);
+
+  /** Plain INSERT so that a blob stored concurrently elsewhere fails instead of being merged */
+  @Transactional
+  @Modifying
+  @Query(
+      value =
+          "INSERT INTO STORED_BLOB (CONTENT_HASH, BLOB_PATH, SIZE_BYTES, REF_COUNT, CREATED_AT, UPDATED_AT) VALUES (:hash, :path, :size, :references, :now, :now)",
+      nativeQuery = true)
+  int insertBlob(
+      @Param("hash") String hash,
+      @Param("path") String path,
+      @Param("size") long size,
+      @Param("references") int references,
+      @Param("now") LocalDateTime now);
+
+  /** Deletes the blob's row if nothing has referenced it since {@code cutoff}; returns 0 if not */
+  @Transactional
+  @Modifying
+  @Query(
+      "DELETE FROM STORED_BLOB b WHERE b.contentHash = :hash AND b.refCount = 0 AND b.updatedAt < :cutoff")
+  int deleteUnreferenced(@Param("hash") String hash, @Param("cutoff") LocalDateTime cutoff);
+}
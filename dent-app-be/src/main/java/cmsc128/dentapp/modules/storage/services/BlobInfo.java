@@ -0,0 +1,14 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/** Size and last modification time (epoch millis) of a stored blob */
+@Getter
+@AllArgsConstructor
+public class BlobInfo {
+
+  private final long size;
+
+  private final long lastModified;
+}
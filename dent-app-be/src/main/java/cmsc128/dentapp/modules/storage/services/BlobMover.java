@@ -0,0 +1,127 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Copies the files under app.upload.dir into the configured backend, keeping their keys, so
+ * existing records keep pointing at the same paths. Enabled with app.storage.mover.enabled; runs
+ * once in the background after startup and can be rerun safely, since blobs already present with
+ * the same size are skipped. With app.storage.mover.delete-source the local copy is deleted once
+ * it has been copied and verified.
+ */
+@Component
+@Slf4j
+public class BlobMover {
+
+  private final BlobStore blobStore;
+  private final LocalBlobStore localBlobStore;
+  private final boolean enabled;
+  private final boolean deleteSource;
+
+  private final Counter movedCounter;
+  private final Counter skippedCounter;
+  private final Counter failedCounter;
+
+  public BlobMover(
+      BlobStore blobStore,
+      LocalBlobStore localBlobStore,
+      MeterRegistry meterRegistry,
+      @Value("${app.storage.mover.enabled:false}") boolean enabled,
+      @Value("${app.storage.mover.delete-source:false}") boolean deleteSource) {
+    this.blobStore = blobStore;
+    this.localBlobStore = localBlobStore;
+    this.enabled = enabled;
+    this.deleteSource = deleteSource;
+
+    // outcome=moved: copied, skipped: already present, failed: could not be copied
+    this.movedCounter = counter(meterRegistry, "moved");
+    this.skippedCounter = counter(meterRegistry, "skipped");
+    this.failedCounter = counter(meterRegistry, "failed");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    BlobStore target =
+        blobStore instanceof FallbackBlobStore
+            ? ((FallbackBlobStore) blobStore).getPrimary()
+            : blobStore;
+    if (!enabled || target == localBlobStore) {
+      return;
+    }
+
+    Thread thread = new Thread(() -> moveAll(target), "blob-mover");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void moveAll(BlobStore target) {
+    log.info("Moving uploaded files to {}", target.getClass().getSimpleName());
+    AtomicLong inPlace = new AtomicLong();
+    try {
+      localBlobStore.list(
+          "",
+          key -> {
+            if (key.startsWith(ContentAddressedStore.ROOT + "/tmp/")) {
+              return;
+            }
+            if (move(target, key)) {
+              inPlace.incrementAndGet();
+            }
+          });
+    } catch (IOException e) {
+      log.warn("Moving uploaded files stopped: {}", e.getMessage());
+    }
+    log.info("Blob mover finished, {} uploaded files are in the backend", inPlace.get());
+  }
+
+  private boolean move(BlobStore target, String key) {
+    try {
+      Optional<BlobInfo> source = localBlobStore.stat(key);
+      if (source.isEmpty()) {
+        return false;
+      }
+
+      Optional<BlobInfo> existing = target.stat(key);
+      if (existing.isEmpty() || existing.get().getSize() != source.get().getSize()) {
+        try (InputStream data = localBlobStore.open(key)) {
+          target.put(key, data, source.get().getSize());
+        }
+        existing = target.stat(key);
+        if (existing.isEmpty() || existing.get().getSize() != source.get().getSize()) {
+          throw new IOException("size mismatch after copy");
+        }
+        movedCounter.increment();
+      } else {
+        skippedCounter.increment();
+      }
+
+      if (deleteSource) {
+        localBlobStore.delete(key);
+      }
+      return true;
+    } catch (IOException | RuntimeException e) {
+      failedCounter.increment();
+      log.warn("Could not move {}: {}", key, e.getMessage());
+      return false;
+    }
+  }
+
+  private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("dentapp.storage.mover.files")
+        .description("Uploaded files processed by the blob mover")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,65 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Where uploaded files are kept. Keys are the relative paths stored in the database (e.g.
+ * patient_5/dental_charts/teeth11_..._ab12cd34.png or cas/ab/cd/abcd....png), so switching
+ * backends does not change any stored path. Selected with app.storage.backend.
+ */
+public interface BlobStore {
+
+  /** Stores the blob under the key, replacing any existing one. {@code size} may be -1 */
+  void put(String key, InputStream data, long size) throws IOException;
+
+  default void put(String key, byte[] data) throws IOException {
+    put(key, new ByteArrayInputStream(data), data.length);
+  }
+
+  /** Stores the contents of a local file, which the store may move instead of copying */
+  default void putFile(String key, Path source) throws IOException {
+    try (InputStream data = Files.newInputStream(source)) {
+      put(key, data, Files.size(source));
+    }
+  }
+
+  /**
+   * Opens {@code length} bytes of the blob starting at {@code offset} ({@code length} -1 reads to
+   * the end). Throws NoSuchFileException if there is no such blob.
+   */
+  InputStream open(String key, long offset, long length) throws IOException;
+
+  default InputStream open(String key) throws IOException {
+    return open(key, 0, -1);
+  }
+
+  /** Size and modification time of the blob, or empty if there is no such blob */
+  Optional<BlobInfo> stat(String key) throws IOException;
+
+  default boolean exists(String key) throws IOException {
+    return stat(key).isPresent();
+  }
+
+  /** Deletes the blob if it exists */
+  void delete(String key) throws IOException;
+
+  /** Calls {@code consumer} with every key that starts with {@code prefix} */
+  void list(String prefix, Consumer<String> consumer) throws IOException;
+
+  /**
+   * The blob as a file on local disk, for backends that have one, so it can be sent with
+   * sendfile/transferTo instead of being streamed
+   */
+  default Optional<Path> localPath(String key) {
+    return Optional.empty();
+  }
+
+  /** Prepares a key prefix before many blobs are put under it; a no-op unless directories exist */
+  default void createDirectory(String prefix) throws IOException {}
+}
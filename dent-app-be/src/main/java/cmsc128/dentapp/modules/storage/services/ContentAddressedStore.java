@@ -0,0 +1,184 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import cmsc128.dentapp.modules.storage.repositories.StoredBlobRepository;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Deduplicating image store. Each unique image is written once, named by the SHA-256 of its bytes
+ * under a two-level fan-out (cas/ab/cd/abcd....png), and STORED_BLOB counts the records that
+ * point at it. Storing an image that already exists only bumps its reference count.
+ *
+ * <p>Releasing the last reference does not delete the file; unreferenced blobs are left for
+ * UploadGarbageCollector, which avoids racing with a concurrent store of the same image.
+ */
+@Service
+public class ContentAddressedStore {
+
+  public static final String ROOT = "cas";
+
+  private final StoredBlobRepository storedBlobRepository;
+  private final BlobStore blobStore;
+  private final String uploadDir;
+
+  // Serializes stores of the same hash within this instance
+  private final Object[] locks = new Object[64];
+
+  private final AtomicLong referencesStored = new AtomicLong();
+  private final AtomicLong blobsWritten = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  public ContentAddressedStore(
+      StoredBlobRepository storedBlobRepository,
+      BlobStore blobStore,
+      MeterRegistry meterRegistry,
+      @Value("${app.upload.dir:uploads}") String uploadDir) {
+    this.storedBlobRepository = storedBlobRepository;
+    this.blobStore = blobStore;
+    this.uploadDir = uploadDir;
+    for (int i = 0; i < locks.length; i++) {
+      locks[i] = new Object();
+    }
+
+    FunctionCounter.builder(
+            "dentapp.storage.cas.blobs.written", blobsWritten, AtomicLong::doubleValue)
+        .description("Unique images written to the content-addressed store")
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            "dentapp.storage.cas.references", referencesStored, AtomicLong::doubleValue)
+        .description("Images stored, including ones that were already present")
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            "dentapp.storage.cas.bytes.written", bytesWritten, AtomicLong::doubleValue)
+        .description("Bytes written to disk by the content-addressed store")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    FunctionCounter.builder(
+            "dentapp.storage.cas.bytes.saved", bytesSaved, AtomicLong::doubleValue)
+        .description("Bytes not written because an identical image was already stored")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+    Gauge.builder("dentapp.storage.cas.dedup.ratio", this, ContentAddressedStore::dedupRatio)
+        .description("Share of stored images that were duplicates of an existing blob")
+        .register(meterRegistry);
+  }
+
+  /** Lower-case hex SHA-256 of the bytes */
+  public static String hash(byte[] data) {
+    return HexFormat.of().formatHex(sha256().digest(data));
+  }
+
+  public static boolean isBlobPath(String relativePath) {
+    return relativePath != null && relativePath.startsWith(ROOT + "/");
+  }
+
+  /** Relative path of the blob with this hash, e.g. cas/ab/cd/abcd....png */
+  public static String blobPath(String hash) {
+    return ROOT + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + hash + ".png";
+  }
+
+  /**
+   * Stores the image unless an identical one is already stored, adds {@code references}
+   * references to it and returns its relative path.
+   */
+  public String store(byte[] data, int references) throws IOException {
+    return store(hash(data), data.length, references, path -> blobStore.put(path, data));
+  }
+
+  /**
+   * Streaming variant of {@link #store(byte[], int)}. The stream is copied to a local temporary
+   * file while it is hashed, then handed to the blob store only if the image is not stored yet.
+   */
+  public String store(InputStream data, int references) throws IOException {
+    Path tempDir = Paths.get(uploadDir, ROOT, "tmp");
+    Files.createDirectories(tempDir);
+    Path temp = tempDir.resolve(UUID.randomUUID() + ".upload");
+
+    try {
+      MessageDigest digest = sha256();
+      long size;
+      try (DigestInputStream digestStream = new DigestInputStream(data, digest)) {
+        size = Files.copy(digestStream, temp);
+      }
+      String hash = HexFormat.of().formatHex(digest.digest());
+      return store(hash, size, references, path -> blobStore.putFile(path, temp));
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private String store(String hash, long size, int references, BlobWriter writer)
+      throws IOException {
+    String path = blobPath(hash);
+    referencesStored.addAndGet(references);
+
+    synchronized (locks[Integer.parseInt(hash.substring(0, 2), 16) % locks.length]) {
+      LocalDateTime now = LocalDateTime.now();
+      if (storedBlobRepository.addReferences(hash, references, now) > 0) {
+        bytesSaved.addAndGet(size * references);
+        return path;
+      }
+
+      if (!blobStore.exists(path)) {
+        writer.writeTo(path);
+      }
+      try {
+        storedBlobRepository.insertBlob(hash, path, size, references, now);
+      } catch (DataIntegrityViolationException e) {
+        // Another instance stored the same image in the meantime, so nothing new was written
+        storedBlobRepository.addReferences(hash, references, now);
+        bytesSaved.addAndGet(size * references);
+        return path;
+      }
+    }
+
+    blobsWritten.incrementAndGet();
+    bytesWritten.addAndGet(size);
+    bytesSaved.addAndGet(size * (references - 1));
+    return path;
+  }
+
+  /** Drops {@code references} references to the blob at this path */
+  public void release(String relativePath, int references) {
+    String fileName = relativePath.substring(relativePath.lastIndexOf('/') + 1);
+    String hash = fileName.substring(0, fileName.indexOf('.'));
+    storedBlobRepository.removeReferences(hash, references, LocalDateTime.now());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  private interface BlobWriter {
+    void writeTo(String path) throws IOException;
+  }
+
+  private double dedupRatio() {
+    long references = referencesStored.get();
+    return references == 0 ? 0 : 1 - (double) blobsWritten.get() / references;
+  }
+}
@@ -0,0 +1,87 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Writes to the configured backend but still finds blobs that are only in the old local
+ * directory, so files keep being served while BlobMover copies them over.
+ */
+public class FallbackBlobStore implements BlobStore, Closeable {
+
+  private final BlobStore primary;
+  private final BlobStore fallback;
+
+  public FallbackBlobStore(BlobStore primary, BlobStore fallback) {
+    this.primary = primary;
+    this.fallback = fallback;
+  }
+
+  public BlobStore getPrimary() {
+    return primary;
+  }
+
+  @Override
+  public void put(String key, InputStream data, long size) throws IOException {
+    primary.put(key, data, size);
+  }
+
+  @Override
+  public void put(String key, byte[] data) throws IOException {
+    primary.put(key, data);
+  }
+
+  @Override
+  public void putFile(String key, Path source) throws IOException {
+    primary.putFile(key, source);
+  }
+
+  @Override
+  public InputStream open(String key, long offset, long length) throws IOException {
+    return primary.exists(key)
+        ? primary.open(key, offset, length)
+        : fallback.open(key, offset, length);
+  }
+
+  @Override
+  public Optional<BlobInfo> stat(String key) throws IOException {
+    Optional<BlobInfo> info = primary.stat(key);
+    return info.isPresent() ? info : fallback.stat(key);
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    primary.delete(key);
+    fallback.delete(key);
+  }
+
+  @Override
+  public void list(String prefix, Consumer<String> consumer) throws IOException {
+    primary.list(prefix, consumer);
+  }
+
+  @Override
+  public Optional<Path> localPath(String key) {
+    try {
+      return primary.exists(key) ? primary.localPath(key) : fallback.localPath(key);
+    } catch (IOException e) {
+      return Optional.empty();
+    }
+  }
+
+  @Override
+  public void createDirectory(String prefix) throws IOException {
+    primary.createDirectory(prefix);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (primary instanceof Closeable) {
+      ((Closeable) primary).close();
+    }
+  }
+}
@@ -0,0 +1,187 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * Byte-budgeted cache of uploaded image contents, keyed by the relative path FileStorageService
+ * returns. Caffeine evicts by total size (W-TinyLFU), so a few large drawings cannot push out
+ * many small tooth images that are read more often. Files larger than max-entry-bytes are never
+ * cached.
+ *
+ * <p>With off-heap enabled the bytes live in direct buffers, so the heap only holds the small
+ * buffer objects. Entries are invalidated when their file is deleted, and by ImageOptimizer
+ * after it rewrites a file in place; until then an entry can be stale, so readers compare its
+ * length with the stored file's. Hits, misses and evictions are published as
+ * cache.*{cache=images} and the bytes held as dentapp.storage.image-cache.bytes.
+ */
+@Component
+public class ImageCache {
+
+  private final Cache<String, ByteBuffer> images;
+  private final boolean enabled;
+  private final long maxEntryBytes;
+  private final boolean offHeap;
+
+  public ImageCache(
+      MeterRegistry meterRegistry,
+      @Value("${app.upload.cache.max-bytes:67108864}") long maxBytes,
+      @Value("${app.upload.cache.max-entry-bytes:1048576}") long maxEntryBytes,
+      @Value("${app.upload.cache.off-heap:true}") boolean offHeap) {
+    this.enabled = maxBytes > 0;
+    this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+    this.offHeap = offHeap;
+    this.images =
+        Caffeine.newBuilder()
+            .maximumWeight(Math.max(maxBytes, 0))
+            .weigher((String path, ByteBuffer data) -> data.capacity())
+            .recordStats()
+            .build();
+
+    CaffeineCacheMetrics.monitor(meterRegistry, images, "images");
+    Gauge.builder("dentapp.storage.image-cache.bytes", this, ImageCache::weightedSize)
+        .description("Bytes of image data held by the image cache")
+        .baseUnit("bytes")
+        .register(meterRegistry);
+  }
+
+  /** Whether an image of this size would be cached */
+  public boolean accepts(long size) {
+    return enabled && size <= maxEntryBytes;
+  }
+
+  /** Caches an image that was just written, if it is small enough */
+  public void put(String relativePath, byte[] data) {
+    if (accepts(data.length)) {
+      images.put(relativePath, copyOf(data));
+    }
+  }
+
+  /**
+   * Wraps a stream that is about to be written so the bytes read through it can be cached with
+   * {@link #put(String, Capture)} afterwards. Copying stops as soon as the stream outgrows
+   * max-entry-bytes, so a large upload is never buffered.
+   */
+  public Capture capture(InputStream in) {
+    return new Capture(in, enabled ? maxEntryBytes : -1);
+  }
+
+  /** Caches the bytes read through a capture, unless it grew too large to be cached */
+  public void put(String relativePath, Capture capture) {
+    byte[] data = capture.bytes();
+    if (data != null) {
+      put(relativePath, data);
+    }
+  }
+
+  /**
+   * Returns a read-only view of the cached image, loading it with {@code loader} on a miss. The
+   * caller must check {@link #accepts} first.
+   */
+  public ByteBuffer get(String relativePath, ImageLoader loader) throws IOException {
+    try {
+      ByteBuffer data =
+          images.get(
+              relativePath,
+              path -> {
+                try {
+                  return copyOf(loader.load());
+                } catch (IOException e) {
+                  throw new UncheckedIOException(e);
+                }
+              });
+      return data.asReadOnlyBuffer();
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  public void invalidate(String relativePath) {
+    images.invalidate(relativePath);
+  }
+
+  private ByteBuffer copyOf(byte[] data) {
+    if (!offHeap) {
+      return ByteBuffer.wrap(data.clone());
+    }
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    buffer.put(data).flip();
+    return buffer;
+  }
+
+  private double weightedSize() {
+    return images.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0)).orElse(0L);
+  }
+
+  public interface ImageLoader {
+    byte[] load() throws IOException;
+  }
+
+  /** Copies what is read through it, up to a limit, see {@link #capture} */
+  public static class Capture extends FilterInputStream {
+    private final long limit;
+    private ByteArrayOutputStream copy;
+
+    private Capture(InputStream in, long limit) {
+      super(in);
+      this.limit = limit;
+      this.copy = limit < 0 ? null : new ByteArrayOutputStream();
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = super.read();
+      if (b >= 0 && keep(1)) {
+        copy.write(b);
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0 && keep(read)) {
+        copy.write(buffer, offset, read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes would leave a hole in the copy
+      copy = null;
+      return super.skip(n);
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
+    }
+
+    /** The bytes read so far, or null if there were too many to cache */
+    byte[] bytes() {
+      return copy == null ? null : copy.toByteArray();
+    }
+
+    private boolean keep(int count) {
+      if (copy != null && copy.size() + count > limit) {
+        copy = null;
+      }
+      return copy != null;
+    }
+  }
+}
@@ -0,0 +1,196 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Shrinks uploaded PNGs after they are saved. Canvas exports are written with fast, weak
+ * compression; each file is re-encoded losslessly at the highest deflate level and replaced if
+ * that is smaller. A lossless WebP derivative is also stored next to the file as {@code
+ * <path>.webp}, written with the webp-imageio writer, which ImageController serves to clients that
+ * accept image/webp. Without a WebP writer (e.g. on a platform the bundled codec does not cover)
+ * only the PNG is optimized.
+ *
+ * <p>Work runs on one background thread with a bounded queue; when the queue is full the file is
+ * left as it is, so saving never waits for optimization. Sizes before and after are recorded as
+ * dentapp.storage.optimizer.bytes{format=original|png|webp}. Content-addressed blobs are never
+ * rewritten, since their path is the hash of their bytes.
+ */
+@Component
+@Slf4j
+public class ImageOptimizer {
+
+  public static final String WEBP_SUFFIX = ".webp";
+
+  private final BlobStore blobStore;
+  private final ImageCache imageCache;
+  private final boolean enabled;
+  private final boolean webpEnabled;
+  private final ExecutorService executor;
+
+  private final DistributionSummary originalBytes;
+  private final DistributionSummary pngBytes;
+  private final DistributionSummary webpBytes;
+  private final Counter droppedCounter;
+
+  public ImageOptimizer(
+      BlobStore blobStore,
+      ImageCache imageCache,
+      MeterRegistry meterRegistry,
+      @Value("${app.upload.optimize.enabled:true}") boolean enabled,
+      @Value("${app.upload.optimize.webp:true}") boolean webp,
+      @Value("${app.upload.optimize.queue-capacity:1000}") int queueCapacity) {
+    this.blobStore = blobStore;
+    this.imageCache = imageCache;
+    this.enabled = enabled;
+    // Picks up writers from jars the ImageIO registry did not see when it was first created
+    ImageIO.scanForPlugins();
+    this.webpEnabled = webp && ImageIO.getImageWritersByMIMEType("image/webp").hasNext();
+    this.originalBytes = summary(meterRegistry, "original");
+    this.pngBytes = summary(meterRegistry, "png");
+    this.webpBytes = summary(meterRegistry, "webp");
+    this.droppedCounter =
+        Counter.builder("dentapp.storage.optimizer.dropped")
+            .description("Images left unoptimized because the optimizer queue was full")
+            .register(meterRegistry);
+    this.executor =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0L,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            runnable -> {
+              Thread thread = new Thread(runnable, "image-optimizer");
+              thread.setDaemon(true);
+              thread.setPriority(Thread.MIN_PRIORITY);
+              return thread;
+            },
+            (runnable, pool) -> droppedCounter.increment());
+
+    if (enabled && webp && !webpEnabled) {
+      log.info("No ImageIO WebP writer found, WebP derivatives are disabled");
+    }
+  }
+
+  /** Queues a saved PNG for optimization; returns immediately */
+  public void submit(String relativePath) {
+    if (!enabled
+        || ContentAddressedStore.isBlobPath(relativePath)
+        || !relativePath.toLowerCase().endsWith(".png")) {
+      return;
+    }
+    executor.execute(() -> optimize(relativePath));
+  }
+
+  /** Where the WebP derivative of a stored PNG would be, if derivatives are being written */
+  public Optional<String> webpPath(String relativePath) {
+    return webpEnabled && relativePath.toLowerCase().endsWith(".png")
+        ? Optional.of(relativePath + WEBP_SUFFIX)
+        : Optional.empty();
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    executor.shutdownNow();
+  }
+
+  private void optimize(String relativePath) {
+    try {
+      byte[] original;
+      try (InputStream in = blobStore.open(relativePath)) {
+        original = in.readAllBytes();
+      }
+      BufferedImage image = ImageIO.read(new ByteArrayInputStream(original));
+      if (image == null) {
+        return;
+      }
+      originalBytes.record(original.length);
+
+      long pngLength = original.length;
+      byte[] png = encode(image, "image/png", null);
+      if (png != null && png.length < original.length && blobStore.exists(relativePath)) {
+        blobStore.put(relativePath, png);
+        imageCache.invalidate(relativePath);
+        pngLength = png.length;
+      }
+      pngBytes.record(pngLength);
+
+      if (webpEnabled) {
+        byte[] webp = encode(image, "image/webp", "Lossless");
+        // Only kept when it beats the PNG, so its presence alone decides what is served
+        if (webp != null && webp.length < pngLength) {
+          blobStore.put(relativePath + WEBP_SUFFIX, webp);
+          webpBytes.record(webp.length);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not optimize {}: {}", relativePath, e.getMessage());
+    }
+  }
+
+  /** Encodes with the best compression the writer offers, or returns null if there is none */
+  private static byte[] encode(BufferedImage image, String mimeType, String compressionType)
+      throws IOException {
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByMIMEType(mimeType);
+    if (!writers.hasNext()) {
+      return null;
+    }
+
+    ImageWriter writer = writers.next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      String[] types = param.getCompressionTypes();
+      if (compressionType != null
+          && types != null
+          && Arrays.asList(types).contains(compressionType)) {
+        param.setCompressionType(compressionType);
+      }
+      // For PNG quality 0 means deflate level 9; the image data is lossless either way
+      param.setCompressionQuality(compressionType == null ? 0.0f : 1.0f);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+      writer.setOutput(imageOut);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+    return out.toByteArray();
+  }
+
+  private static DistributionSummary summary(MeterRegistry meterRegistry, String format) {
+    return DistributionSummary.builder("dentapp.storage.optimizer.bytes")
+        .description("Size of optimized images before and after optimization")
+        .baseUnit("bytes")
+        .tag("format", format)
+        .register(meterRegistry);
+  }
+}
@@ -0,0 +1,127 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/** The original layout: one file per blob under app.upload.dir, at the key's relative path */
+public class LocalBlobStore implements BlobStore {
+
+  private final Path root;
+
+  public LocalBlobStore(String uploadDir) {
+    this.root = Paths.get(uploadDir).toAbsolutePath().normalize();
+  }
+
+  @Override
+  public void put(String key, InputStream data, long size) throws IOException {
+    Path temp = tempFile(resolve(key));
+    try {
+      Files.copy(data, temp);
+      putFile(key, temp);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  @Override
+  public void put(String key, byte[] data) throws IOException {
+    Path temp = tempFile(resolve(key));
+    try {
+      Files.write(temp, data);
+      putFile(key, temp);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /** Moves the file into place, so a half-written blob is never visible under its key */
+  @Override
+  public void putFile(String key, Path source) throws IOException {
+    Path target = resolve(key);
+    if (!Files.isDirectory(target.getParent())) {
+      Files.createDirectories(target.getParent());
+    }
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  @Override
+  public InputStream open(String key, long offset, long length) throws IOException {
+    FileChannel channel = FileChannel.open(resolve(key), StandardOpenOption.READ);
+    channel.position(offset);
+    InputStream in = Channels.newInputStream(channel);
+    return length < 0 ? in : new BoundedInputStream(in, length);
+  }
+
+  @Override
+  public Optional<BlobInfo> stat(String key) throws IOException {
+    Path file = resolve(key);
+    if (!Files.isRegularFile(file)) {
+      return Optional.empty();
+    }
+    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+    return Optional.of(new BlobInfo(attributes.size(), attributes.lastModifiedTime().toMillis()));
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    Files.deleteIfExists(resolve(key));
+  }
+
+  @Override
+  public void list(String prefix, Consumer<String> consumer) throws IOException {
+    if (!Files.isDirectory(root)) {
+      return;
+    }
+    try (Stream<Path> files = Files.walk(root)) {
+      files
+          .filter(Files::isRegularFile)
+          .map(file -> root.relativize(file).toString().replace('\\', '/'))
+          .filter(key -> key.startsWith(prefix) && !key.contains(".tmp-"))
+          .forEach(consumer);
+    }
+  }
+
+  @Override
+  public Optional<Path> localPath(String key) {
+    return Optional.of(resolve(key));
+  }
+
+  @Override
+  public void createDirectory(String prefix) throws IOException {
+    Files.createDirectories(resolve(prefix));
+  }
+
+  // A temporary sibling of the target, creating the parent directories only when missing
+  private static Path tempFile(Path target) throws IOException {
+    Path temp = target.resolveSibling(target.getFileName() + ".tmp-" + UUID.randomUUID());
+    if (!Files.isDirectory(target.getParent())) {
+      Files.createDirectories(target.getParent());
+    }
+    return temp;
+  }
+
+  private Path resolve(String key) {
+    Path path = root.resolve(key).normalize();
+    if (!path.startsWith(root)) {
+      throw new IllegalArgumentException("Key outside the upload directory: " + key);
+    }
+    return path;
+  }
+}
@@ -0,0 +1,339 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Append-only pack files: blobs are appended one after another to pack-NNNNNN.dat files of up to
+ * app.storage.pack.max-pack-bytes, so millions of small images use a handful of files and inodes.
+ * Every put and delete is appended to index.log (key, pack, offset, length, time), which is
+ * replayed into memory at startup; the last line for a key wins.
+ *
+ * <p>Deleting a blob only writes a tombstone; the bytes stay in their pack until it is compacted
+ * offline. Writes are serialized and streamed into the pack with FileChannel.transferFrom, never
+ * buffered whole, and both the pack and the index line are forced to disk before a put returns.
+ * Reads are positional and run concurrently. A line torn by a crash is cut off index.log when the
+ * store opens. The pack directory is local to the node.
+ */
+@Slf4j
+public class PackFileBlobStore implements BlobStore, Closeable {
+
+  private static final String INDEX_FILE = "index.log";
+  private static final long DELETED = -1;
+
+  // Bytes per transferFrom call when the size of a blob is not known up front
+  private static final long TRANSFER_BYTES = 8 * 1024 * 1024;
+
+  private final Path directory;
+  private final long maxPackBytes;
+  private final Map<String, Entry> index = new ConcurrentHashMap<>();
+  private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+
+  private final Object writeLock = new Object();
+  private FileChannel indexWriter;
+  private FileChannel packWriter;
+  private int packNumber;
+
+  public PackFileBlobStore(String directory, long maxPackBytes) throws IOException {
+    this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    this.maxPackBytes = maxPackBytes;
+    Files.createDirectories(this.directory);
+
+    Path indexFile = this.directory.resolve(INDEX_FILE);
+    if (Files.exists(indexFile)) {
+      truncateTornLine(indexFile);
+      replay(indexFile);
+    }
+
+    this.indexWriter =
+        FileChannel.open(indexFile, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    openPack(Math.max(packNumber, 1));
+    log.info("Pack file store opened at {} with {} blobs", this.directory, index.size());
+  }
+
+  @Override
+  public void put(String key, InputStream data, long size) throws IOException {
+    append(key, Channels.newChannel(data), size);
+  }
+
+  @Override
+  public void putFile(String key, Path source) throws IOException {
+    try (FileChannel channel = FileChannel.open(source, StandardOpenOption.READ)) {
+      append(key, channel, channel.size());
+    }
+  }
+
+  @Override
+  public void put(String key, byte[] data) throws IOException {
+    checkKey(key);
+    synchronized (writeLock) {
+      rollPack(data.length);
+
+      long offset = packWriter.size();
+      ByteBuffer buffer = ByteBuffer.wrap(data);
+      while (buffer.hasRemaining()) {
+        packWriter.write(buffer, offset + buffer.position());
+      }
+      packWriter.force(false);
+
+      Entry entry = new Entry(packNumber, offset, data.length, System.currentTimeMillis());
+      appendIndex(key, entry);
+      index.put(key, entry);
+    }
+  }
+
+  /** Streams {@code size} bytes (all of them if -1) from the source onto the end of the pack */
+  private void append(String key, ReadableByteChannel source, long size) throws IOException {
+    checkKey(key);
+    synchronized (writeLock) {
+      rollPack(Math.max(size, 0));
+
+      long offset = packWriter.size();
+      long length = 0;
+      try {
+        // transferFrom returns 0 once the source is exhausted
+        long transferred;
+        do {
+          long count = size < 0 ? TRANSFER_BYTES : size - length;
+          transferred = count > 0 ? packWriter.transferFrom(source, offset + length, count) : 0;
+          length += transferred;
+        } while (transferred > 0);
+        if (size >= 0 && length != size) {
+          throw new EOFException("Expected " + size + " bytes for " + key + ", got " + length);
+        }
+        packWriter.force(false);
+      } catch (IOException | RuntimeException e) {
+        // Cut the partial blob off so the next one starts where the index expects
+        packWriter.truncate(offset);
+        throw e;
+      }
+
+      Entry entry = new Entry(packNumber, offset, length, System.currentTimeMillis());
+      appendIndex(key, entry);
+      index.put(key, entry);
+    }
+  }
+
+  @Override
+  public InputStream open(String key, long offset, long length) throws IOException {
+    Entry entry = index.get(key);
+    if (entry == null) {
+      throw new NoSuchFileException(key);
+    }
+
+    long start = Math.min(offset, entry.length);
+    long count = length < 0 ? entry.length - start : Math.min(length, entry.length - start);
+    FileChannel channel = reader(entry.pack);
+    // Positional reads do not move the shared channel's position, so readers do not interfere
+    return new BoundedInputStream(
+        Channels.newInputStream(new PositionalReader(channel, entry.offset + start)), count);
+  }
+
+  @Override
+  public Optional<BlobInfo> stat(String key) {
+    Entry entry = index.get(key);
+    return entry == null
+        ? Optional.empty()
+        : Optional.of(new BlobInfo(entry.length, entry.lastModified));
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    synchronized (writeLock) {
+      if (index.remove(key) != null) {
+        appendIndex(key, new Entry(0, DELETED, 0, System.currentTimeMillis()));
+      }
+    }
+  }
+
+  @Override
+  public void list(String prefix, Consumer<String> consumer) {
+    index.keySet().stream().filter(key -> key.startsWith(prefix)).forEach(consumer);
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (writeLock) {
+      indexWriter.close();
+      packWriter.close();
+    }
+    for (FileChannel reader : readers.values()) {
+      reader.close();
+    }
+  }
+
+  /**
+   * Cuts index.log back to its last complete line. A line without its newline was being written
+   * when the process died, so the blob it describes was never acknowledged; left in place, the
+   * next append would continue it and corrupt that line too.
+   */
+  private static void truncateTornLine(Path indexFile) throws IOException {
+    try (FileChannel channel =
+        FileChannel.open(indexFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long end = channel.size();
+      ByteBuffer last = ByteBuffer.allocate(1);
+      while (end > 0) {
+        last.clear();
+        channel.read(last, end - 1);
+        if (last.get(0) == '\n') {
+          break;
+        }
+        end--;
+      }
+      if (end < channel.size()) {
+        long torn = channel.size() - end;
+        log.warn("Dropping a torn line of {} bytes at the end of {}", torn, INDEX_FILE);
+        channel.truncate(end);
+        channel.force(true);
+      }
+    }
+  }
+
+  private void replay(Path indexFile) throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(indexFile, StandardCharsets.UTF_8)) {
+      String line;
+      int lineNumber = 0;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+        String[] fields = line.split("\t");
+        try {
+          if (fields.length != 5) {
+            throw new IllegalArgumentException("expected 5 fields, found " + fields.length);
+          }
+
+          int pack = Integer.parseInt(fields[1]);
+          long offset = Long.parseLong(fields[2]);
+          if (offset == DELETED) {
+            index.remove(fields[0]);
+          } else {
+            index.put(
+                fields[0],
+                new Entry(pack, offset, Long.parseLong(fields[3]), Long.parseLong(fields[4])));
+            packNumber = Math.max(packNumber, pack);
+          }
+        } catch (IllegalArgumentException e) {
+          // NumberFormatException included; one bad line must not keep the store from opening
+          log.warn("Skipping unreadable line {} of {}: {}", lineNumber, INDEX_FILE, e.getMessage());
+        }
+      }
+    }
+  }
+
+  /** Appends a line to index.log and forces it to disk before the put or delete returns */
+  private void appendIndex(String key, Entry entry) throws IOException {
+    String line =
+        key
+            + "\t"
+            + entry.pack
+            + "\t"
+            + entry.offset
+            + "\t"
+            + entry.length
+            + "\t"
+            + entry.lastModified
+            + "\n";
+    ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.UTF_8));
+    while (buffer.hasRemaining()) {
+      indexWriter.write(buffer);
+    }
+    indexWriter.force(false);
+  }
+
+  /** Starts the next pack if {@code size} more bytes would not fit in the current one */
+  private void rollPack(long size) throws IOException {
+    if (packWriter.size() > 0 && packWriter.size() + size > maxPackBytes) {
+      packWriter.close();
+      openPack(packNumber + 1);
+    }
+  }
+
+  private void openPack(int number) throws IOException {
+    packNumber = number;
+    packWriter =
+        FileChannel.open(
+            packPath(number),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE,
+            StandardOpenOption.READ);
+  }
+
+  private FileChannel reader(int pack) {
+    return readers.computeIfAbsent(
+        pack,
+        number -> {
+          try {
+            return FileChannel.open(packPath(number), StandardOpenOption.READ);
+          } catch (IOException e) {
+            throw new IllegalStateException("Cannot open pack " + number, e);
+          }
+        });
+  }
+
+  private Path packPath(int number) {
+    return directory.resolve(String.format("pack-%06d.dat", number));
+  }
+
+  private static void checkKey(String key) {
+    if (key.contains("\t") || key.contains("\n") || key.contains("\r")) {
+      throw new IllegalArgumentException("Invalid blob key: " + key);
+    }
+  }
+
+  @AllArgsConstructor
+  private static class Entry {
+    private final int pack;
+    private final long offset;
+    private final long length;
+    private final long lastModified;
+  }
+
+  /** Reads a shared channel from its own position using positional reads */
+  private static class PositionalReader implements ReadableByteChannel {
+    private final FileChannel channel;
+    private long position;
+
+    PositionalReader(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+      int read = channel.read(buffer, position);
+      if (read > 0) {
+        position += read;
+      }
+      return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+      // The channel is shared by all readers of the pack and closed with the store
+    }
+  }
+}
@@ -0,0 +1,22 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A resumable upload in progress: who started it, what it is for, its declared length and when
+ * its last chunk arrived
+ */
+@Getter
+@AllArgsConstructor
+public class ResumableUpload {
+  private final String id;
+  private final String owner;
+  private final long patientId;
+  private final String imageType;
+  private final String fileName;
+  private final long length;
+  private final long createdAt;
+  @Setter private volatile long lastActivityAt;
+}
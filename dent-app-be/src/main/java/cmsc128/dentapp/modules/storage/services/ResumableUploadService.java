@@ -0,0 +1,350 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import cmsc128.dentapp.Service.FileStorageService;
+import cmsc128.dentapp.modules.patient.repositories.PatientRepository;
+import cmsc128.dentapp.modules.storage.entities.ClinicalFile;
+import cmsc128.dentapp.modules.storage.repositories.ClinicalFileRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Resumable uploads in the style of the tus protocol: an upload is created with its total length,
+ * its bytes are appended in chunks at the offset the server reports, and once all bytes are in it
+ * is handed to FileStorageService and recorded as a CLINICAL_FILE of the patient. Bytes received
+ * before a connection drops are kept, so a client resumes from the last offset instead of starting
+ * over.
+ *
+ * <p>Partial uploads live in app.upload.resumable.dir as {@code <id>.part} next to an {@code
+ * <id>.info} properties file, so they survive a restart. Chunks are written with positional
+ * FileChannel writes through a small buffer and never held in memory whole. Only one chunk per
+ * upload is written at a time. Uploads that receive no chunk for expire-hours are deleted.
+ */
+@Component
+@Slf4j
+public class ResumableUploadService {
+
+  private static final Pattern UPLOAD_ID = Pattern.compile("[0-9a-f]{32}");
+  private static final Pattern IMAGE_TYPE = Pattern.compile("[A-Za-z0-9_-]{1,40}");
+  private static final int BUFFER_BYTES = 64 * 1024;
+
+  private final FileStorageService fileStorageService;
+  private final ClinicalFileRepository clinicalFileRepository;
+  private final PatientRepository patientRepository;
+  private final Path directory;
+  private final long maxUploadBytes;
+  private final long maxChunkBytes;
+  private final int maxActivePerUser;
+  private final long expireMillis;
+  private final Set<String> allowedExtensions;
+
+  private final Map<String, ResumableUpload> uploads = new ConcurrentHashMap<>();
+  private final Map<String, ReentrantLock> writeLocks = new ConcurrentHashMap<>();
+
+  public ResumableUploadService(
+      FileStorageService fileStorageService,
+      ClinicalFileRepository clinicalFileRepository,
+      PatientRepository patientRepository,
+      @Value("${app.upload.resumable.dir:uploads-partial}") String directory,
+      @Value("${app.upload.resumable.max-upload-bytes:209715200}") long maxUploadBytes,
+      @Value("${app.upload.resumable.max-chunk-bytes:8388608}") long maxChunkBytes,
+      @Value("${app.upload.resumable.max-active-per-user:10}") int maxActivePerUser,
+      @Value("${app.upload.resumable.expire-hours:24}") long expireHours,
+      @Value("${app.upload.resumable.allowed-extensions:png,jpg,jpeg,tif,tiff,dcm,pdf}")
+          String allowedExtensions)
+      throws IOException {
+    this.fileStorageService = fileStorageService;
+    this.clinicalFileRepository = clinicalFileRepository;
+    this.patientRepository = patientRepository;
+    this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    this.maxUploadBytes = maxUploadBytes;
+    this.maxChunkBytes = maxChunkBytes;
+    this.maxActivePerUser = maxActivePerUser;
+    this.expireMillis = expireHours * 3600_000L;
+    this.allowedExtensions =
+        Arrays.stream(allowedExtensions.split(","))
+            .map(extension -> extension.trim().toLowerCase())
+            .filter(extension -> !extension.isEmpty())
+            .collect(Collectors.toSet());
+
+    Files.createDirectories(this.directory);
+    loadUploads();
+  }
+
+  /** Starts an upload of {@code length} bytes for the patient */
+  public ResumableUpload create(
+      String owner, long patientId, String imageType, String fileName, long length)
+      throws IOException {
+    if (length <= 0) {
+      throw new IllegalArgumentException("Upload-Length must be positive");
+    }
+    if (length > maxUploadBytes) {
+      throw new MaxUploadSizeExceededException(maxUploadBytes);
+    }
+    if (imageType == null || !IMAGE_TYPE.matcher(imageType).matches()) {
+      throw new IllegalArgumentException("Invalid image type");
+    }
+    if (!allowedExtensions.contains(extensionOf(fileName))) {
+      throw new IllegalArgumentException("File type is not allowed: " + fileName);
+    }
+
+    long now = System.currentTimeMillis();
+    ResumableUpload upload =
+        new ResumableUpload(
+            UUID.randomUUID().toString().replace("-", ""),
+            owner,
+            patientId,
+            imageType,
+            fileName,
+            length,
+            now,
+            now);
+    // Counting and adding under one lock, so parallel creates cannot all pass the limit
+    synchronized (uploads) {
+      long active = uploads.values().stream().filter(u -> u.getOwner().equals(owner)).count();
+      if (active >= maxActivePerUser) {
+        throw new IllegalStateException("Too many uploads in progress");
+      }
+      writeInfo(upload);
+      Files.createFile(partFile(upload.getId()));
+      uploads.put(upload.getId(), upload);
+    }
+    return upload;
+  }
+
+  /** The owner's upload with this id; someone else's uploads do not exist for them */
+  public ResumableUpload get(String owner, String id) {
+    ResumableUpload upload = id != null && UPLOAD_ID.matcher(id).matches() ? uploads.get(id) : null;
+    if (upload == null || !upload.getOwner().equals(owner)) {
+      throw new NoSuchElementException("Upload not found");
+    }
+    return upload;
+  }
+
+  /** Bytes received so far, i.e. where the next chunk must start */
+  public long offset(ResumableUpload upload) throws IOException {
+    return Files.size(partFile(upload.getId()));
+  }
+
+  /**
+   * Writes a chunk that starts at {@code offset} and returns the new offset. Bytes that arrived
+   * before the request body broke off are kept.
+   */
+  public long append(String owner, String id, long offset, InputStream chunk) throws IOException {
+    ResumableUpload upload = get(owner, id);
+    ReentrantLock lock = writeLocks.computeIfAbsent(id, key -> new ReentrantLock());
+    if (!lock.tryLock()) {
+      throw new IllegalStateException("Another chunk of this upload is being written");
+    }
+
+    try (FileChannel channel = FileChannel.open(partFile(id), StandardOpenOption.WRITE)) {
+      long current = channel.size();
+      if (offset != current) {
+        throw new IllegalStateException("Upload-Offset must be " + current);
+      }
+
+      long limit = Math.min(maxChunkBytes, upload.getLength() - current);
+      long position = current;
+      byte[] buffer = new byte[BUFFER_BYTES];
+      try {
+        int read;
+        while ((read = chunk.read(buffer)) > 0) {
+          if (position - current + read > limit) {
+            // Drop the whole chunk rather than keep an arbitrary prefix of it
+            channel.truncate(current);
+            throw new MaxUploadSizeExceededException(limit);
+          }
+          ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+          while (data.hasRemaining()) {
+            position += channel.write(data, position);
+          }
+        }
+      } finally {
+        channel.force(false);
+        // A cancelled or expired upload must not get its .info file back
+        if (position > current && uploads.containsKey(id)) {
+          upload.setLastActivityAt(System.currentTimeMillis());
+          writeInfo(upload);
+        }
+      }
+      return position;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Stores the finished upload through FileStorageService and records it for the patient */
+  public ClinicalFile complete(String owner, String id) throws IOException {
+    ResumableUpload upload = get(owner, id);
+    ReentrantLock lock = writeLocks.computeIfAbsent(id, key -> new ReentrantLock());
+    if (!lock.tryLock()) {
+      throw new IllegalStateException("A chunk of this upload is still being written");
+    }
+
+    try {
+      long received = offset(upload);
+      if (received != upload.getLength()) {
+        throw new IllegalStateException(
+            "Upload is incomplete: " + received + " of " + upload.getLength() + " bytes");
+      }
+
+      String relativePath =
+          fileStorageService.saveLargeUpload(
+              upload.getPatientId(),
+              upload.getImageType(),
+              upload.getFileName(),
+              partFile(id));
+
+      ClinicalFile clinicalFile = new ClinicalFile();
+      clinicalFile.setPatient(patientRepository.getReferenceById(upload.getPatientId()));
+      clinicalFile.setImageType(upload.getImageType());
+      clinicalFile.setFileName(upload.getFileName());
+      clinicalFile.setFilePath(relativePath);
+      clinicalFile.setSizeBytes(upload.getLength());
+      clinicalFile.setUploadedBy(upload.getOwner());
+      clinicalFile.setCreatedAt(LocalDateTime.now());
+      try {
+        clinicalFile = clinicalFileRepository.save(clinicalFile);
+      } catch (RuntimeException e) {
+        fileStorageService.deleteFile(relativePath);
+        // The part file has been handed to storage, so this upload cannot be completed again
+        remove(id);
+        throw e;
+      }
+
+      remove(id);
+      return clinicalFile;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void cancel(String owner, String id) throws IOException {
+    get(owner, id);
+    ReentrantLock lock = writeLocks.computeIfAbsent(id, key -> new ReentrantLock());
+    if (!lock.tryLock()) {
+      throw new IllegalStateException("A chunk of this upload is still being written");
+    }
+
+    try {
+      remove(id);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Deletes uploads that have not received a chunk for expire-hours */
+  @Scheduled(fixedDelayString = "${app.upload.resumable.cleanup-interval:3600000}")
+  public void expireUploads() {
+    long cutoff = System.currentTimeMillis() - expireMillis;
+    for (ResumableUpload upload : uploads.values()) {
+      ReentrantLock lock = writeLocks.computeIfAbsent(upload.getId(), key -> new ReentrantLock());
+      // An upload still receiving a chunk is left for the next pass
+      if (upload.getLastActivityAt() >= cutoff || !lock.tryLock()) {
+        continue;
+      }
+      try {
+        remove(upload.getId());
+      } catch (IOException e) {
+        log.warn("Could not delete expired upload {}: {}", upload.getId(), e.getMessage());
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  /** Callers hold the upload's write lock */
+  private void remove(String id) throws IOException {
+    uploads.remove(id);
+    writeLocks.remove(id);
+    Files.deleteIfExists(partFile(id));
+    Files.deleteIfExists(infoFile(id));
+  }
+
+  private void loadUploads() throws IOException {
+    try (DirectoryStream<Path> infoFiles = Files.newDirectoryStream(directory, "*.info")) {
+      for (Path infoFile : infoFiles) {
+        Properties info = new Properties();
+        try (Reader reader = Files.newBufferedReader(infoFile, StandardCharsets.UTF_8)) {
+          info.load(reader);
+          ResumableUpload upload =
+              new ResumableUpload(
+                  info.getProperty("id"),
+                  info.getProperty("owner"),
+                  Long.parseLong(info.getProperty("patientId")),
+                  info.getProperty("imageType"),
+                  info.getProperty("fileName"),
+                  Long.parseLong(info.getProperty("length")),
+                  Long.parseLong(info.getProperty("createdAt")),
+                  // Uploads saved before lastActivityAt was kept count from their creation
+                  Long.parseLong(
+                      info.getProperty("lastActivityAt", info.getProperty("createdAt"))));
+          if (Files.exists(partFile(upload.getId()))) {
+            uploads.put(upload.getId(), upload);
+          }
+        } catch (RuntimeException e) {
+          log.warn("Ignoring unreadable upload {}: {}", infoFile.getFileName(), e.getMessage());
+        }
+      }
+    }
+    if (!uploads.isEmpty()) {
+      log.info("Resumable uploads restored: {}", uploads.size());
+    }
+  }
+
+  private void writeInfo(ResumableUpload upload) throws IOException {
+    Properties info = new Properties();
+    info.setProperty("id", upload.getId());
+    info.setProperty("owner", upload.getOwner());
+    info.setProperty("patientId", Long.toString(upload.getPatientId()));
+    info.setProperty("imageType", upload.getImageType());
+    info.setProperty("fileName", upload.getFileName());
+    info.setProperty("length", Long.toString(upload.getLength()));
+    info.setProperty("createdAt", Long.toString(upload.getCreatedAt()));
+    info.setProperty("lastActivityAt", Long.toString(upload.getLastActivityAt()));
+    Path infoFile = infoFile(upload.getId());
+    try (Writer writer = Files.newBufferedWriter(infoFile, StandardCharsets.UTF_8)) {
+      info.store(writer, null);
+    }
+  }
+
+  private Path partFile(String id) {
+    return directory.resolve(id + ".part");
+  }
+
+  private Path infoFile(String id) {
+    return directory.resolve(id + ".info");
+  }
+
+  private static String extensionOf(String fileName) {
+    int dot = fileName == null ? -1 : fileName.lastIndexOf('.');
+    return dot < 0 ? "" : fileName.substring(dot + 1).toLowerCase();
+  }
+}
@@ -0,0 +1,143 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.NoSuchFileException;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+/**
+ * Blobs as objects in an S3-compatible bucket, shared by every app node. Works against AWS S3 or
+ * a self-hosted MinIO (set app.storage.s3.endpoint, e.g. http://localhost:9000, which also turns
+ * on path-style addressing). Keys are prefixed with app.storage.s3.prefix.
+ */
+public class S3BlobStore implements BlobStore, Closeable {
+
+  private final S3Client client;
+  private final String bucket;
+  private final String prefix;
+
+  public S3BlobStore(
+      String endpoint,
+      String region,
+      String bucket,
+      String prefix,
+      String accessKey,
+      String secretKey) {
+    S3ClientBuilder builder = S3Client.builder().region(Region.of(region));
+    if (endpoint != null && !endpoint.isBlank()) {
+      builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+    }
+    if (accessKey != null && !accessKey.isBlank()) {
+      builder.credentialsProvider(
+          StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey)));
+    } else {
+      builder.credentialsProvider(DefaultCredentialsProvider.create());
+    }
+
+    this.client = builder.build();
+    this.bucket = bucket;
+    this.prefix = prefix == null ? "" : prefix;
+  }
+
+  @Override
+  public void put(String key, InputStream data, long size) throws IOException {
+    RequestBody body =
+        size >= 0
+            ? RequestBody.fromInputStream(data, size)
+            : RequestBody.fromBytes(data.readAllBytes());
+    try {
+      client.putObject(request -> request.bucket(bucket).key(prefix + key), body);
+    } catch (SdkException e) {
+      throw new IOException("Could not store " + key + " in bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public void put(String key, byte[] data) throws IOException {
+    try {
+      client.putObject(
+          request -> request.bucket(bucket).key(prefix + key), RequestBody.fromBytes(data));
+    } catch (SdkException e) {
+      throw new IOException("Could not store " + key + " in bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public InputStream open(String key, long offset, long length) throws IOException {
+    GetObjectRequest.Builder request = GetObjectRequest.builder().bucket(bucket).key(prefix + key);
+    if (offset > 0 || length >= 0) {
+      // Only the requested bytes are transferred from the bucket
+      request.range("bytes=" + offset + "-" + (length >= 0 ? offset + length - 1 : ""));
+    }
+    try {
+      return client.getObject(request.build());
+    } catch (NoSuchKeyException e) {
+      throw new NoSuchFileException(key);
+    } catch (SdkException e) {
+      throw new IOException("Could not read " + key + " from bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public Optional<BlobInfo> stat(String key) throws IOException {
+    try {
+      HeadObjectResponse head =
+          client.headObject(request -> request.bucket(bucket).key(prefix + key));
+      return Optional.of(new BlobInfo(head.contentLength(), head.lastModified().toEpochMilli()));
+    } catch (NoSuchKeyException e) {
+      return Optional.empty();
+    } catch (S3Exception e) {
+      if (e.statusCode() == 404) {
+        return Optional.empty();
+      }
+      throw new IOException("Could not stat " + key + " in bucket " + bucket, e);
+    } catch (SdkException e) {
+      throw new IOException("Could not stat " + key + " in bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public void delete(String key) throws IOException {
+    try {
+      client.deleteObject(request -> request.bucket(bucket).key(prefix + key));
+    } catch (SdkException e) {
+      throw new IOException("Could not delete " + key + " from bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public void list(String keyPrefix, Consumer<String> consumer) throws IOException {
+    ListObjectsV2Request request =
+        ListObjectsV2Request.builder().bucket(bucket).prefix(prefix + keyPrefix).build();
+    try {
+      for (S3Object object : client.listObjectsV2Paginator(request).contents()) {
+        consumer.accept(object.key().substring(prefix.length()));
+      }
+    } catch (SdkException e) {
+      throw new IOException("Could not list bucket " + bucket, e);
+    }
+  }
+
+  @Override
+  public void close() {
+    client.close();
+  }
+}
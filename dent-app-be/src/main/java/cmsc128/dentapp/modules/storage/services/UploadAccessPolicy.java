@@ -0,0 +1,101 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import cmsc128.dentapp.modules.patient.repositories.PatientRepository;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Decides who may read or write a patient's files under /uploads. Every access needs a permitted
+ * role. Files under patient_N/ additionally need patient N to exist, and every granted or denied
+ * access to a patient's files is written to the dentapp.audit.uploads log. Users are not assigned
+ * to patients in this system, so a permitted role reaches every existing patient; an assignment
+ * check belongs in {@link #canAccessPatient} once one exists. Content-addressed blobs are shared
+ * between patients and only need a permitted role.
+ */
+@Component
+@Slf4j(topic = "dentapp.audit.uploads")
+public class UploadAccessPolicy {
+
+  private final Set<String> allowedAuthorities;
+  private final PatientRepository patientRepository;
+
+  // Ids of patients known to exist; patients are never deleted, so misses are not cached
+  private final Cache<Long, Boolean> existingPatients =
+      Caffeine.newBuilder().maximumSize(10_000).expireAfterWrite(Duration.ofMinutes(10)).build();
+
+  public UploadAccessPolicy(
+      PatientRepository patientRepository,
+      @Value("${app.uploads.allowed-roles:ADMIN,SUPERADMIN,FACULTY,CLINICIAN,STAFF}")
+          String allowedRoles) {
+    this.patientRepository = patientRepository;
+    this.allowedAuthorities =
+        Arrays.stream(allowedRoles.split(","))
+            .map(String::trim)
+            .filter(role -> !role.isEmpty())
+            .map(role -> "ROLE_" + role)
+            .collect(Collectors.toSet());
+  }
+
+  public boolean canRead(Authentication authentication, String relativePath) {
+    if (!hasPermittedRole(authentication)) {
+      return false;
+    }
+
+    Long patientId = patientIdOf(relativePath);
+    return patientId == null || canAccessPatient(authentication, patientId, "read");
+  }
+
+  /** Whether the user may store files for the patient, e.g. through a resumable upload */
+  public boolean canWrite(Authentication authentication, long patientId) {
+    return hasPermittedRole(authentication)
+        && canAccessPatient(authentication, patientId, "write");
+  }
+
+  /** Per-patient check: the patient must exist. Each decision is audit-logged. */
+  protected boolean canAccessPatient(Authentication authentication, long patientId, String action) {
+    boolean exists =
+        existingPatients.get(
+                patientId, id -> patientRepository.existsById(id) ? Boolean.TRUE : null)
+            != null;
+    if (exists) {
+      log.info("{} {} patient {}", authentication.getName(), action, patientId);
+    } else {
+      log.warn("{} denied {} of unknown patient {}", authentication.getName(), action, patientId);
+    }
+    return exists;
+  }
+
+  private boolean hasPermittedRole(Authentication authentication) {
+    if (authentication == null || !authentication.isAuthenticated()) {
+      return false;
+    }
+    return authentication.getAuthorities().stream()
+        .map(GrantedAuthority::getAuthority)
+        .anyMatch(allowedAuthorities::contains);
+  }
+
+  /** Returns N for paths under patient_N/, otherwise null */
+  static Long patientIdOf(String relativePath) {
+    if (!relativePath.startsWith("patient_")) {
+      return null;
+    }
+    int slash = relativePath.indexOf('/');
+    try {
+      return Long.parseLong(relativePath.substring("patient_".length(), slash));
+    } catch (RuntimeException e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,563 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import cmsc128.dentapp.modules.chart.repositories.ChartRepository;
+import cmsc128.dentapp.modules.chart.repositories.ChartToothImageRepository;
+import cmsc128.dentapp.modules.soft_tissue_examination.repositories.SoftTissueExaminationRepository;
+import cmsc128.dentapp.modules.storage.entities.StoredBlob;
+import cmsc128.dentapp.modules.storage.repositories.ClinicalFileRepository;
+import cmsc128.dentapp.modules.storage.repositories.StoredBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Finds uploaded files that nothing refers to, and stored paths whose file is gone. Enabled with
+ * app.upload.gc.enabled; each run makes three passes:
+ *
+ * <ol>
+ *   <li>Sweep: the uploads are listed and handed out in batches of batch-size keys to parallelism
+ *       workers. Each batch is joined against every path column (CHART_TOOTH_IMAGE, the chart
+ *       sprites, SOFT_TISSUE_EXAMINATION, CLINICAL_FILE) with one IN query per table, answered
+ *       from the path indexes, and content-addressed blobs also against STORED_BLOB. Files older
+ *       than min-age-hours that are not referenced are moved to quarantine/yyyyMMdd/, and
+ *       content-addressed blobs are re-hashed to catch corruption.
+ *   <li>Scrub: every stored path is checked for its file, and dangling references are logged.
+ *   <li>Purge: quarantine days older than quarantine-days are deleted.
+ * </ol>
+ *
+ * <p>Nothing is deleted outright except stale temporary files, so a file a client uploaded but
+ * has not attached to a record yet can still be restored from quarantine. Folders listed in
+ * excluded-folders (none by default) are not swept.
+ *
+ * <p>File checks and bytes copied or hashed are rate-limited (max-files-per-second,
+ * max-bytes-per-second) to leave I/O for requests. Progress is published as
+ * dentapp.storage.gc.files{outcome}, dentapp.storage.gc.dangling, dentapp.storage.gc.corrupt and
+ * dentapp.storage.gc.running.
+ */
+@Component
+@Slf4j
+public class UploadGarbageCollector {
+
+  public static final String QUARANTINE_ROOT = "quarantine";
+
+  // Quarantined files are grouped by day: quarantine/yyyyMMdd/<original path>
+  private static final DateTimeFormatter DAY = DateTimeFormatter.BASIC_ISO_DATE;
+
+  // Dangling references logged per run; the counter still counts all of them
+  private static final int MAX_LOGGED_DANGLING = 100;
+
+  private final BlobStore blobStore;
+  private final ImageCache imageCache;
+  private final ChartToothImageRepository chartToothImageRepository;
+  private final ChartRepository chartRepository;
+  private final SoftTissueExaminationRepository softTissueExaminationRepository;
+  private final ClinicalFileRepository clinicalFileRepository;
+  private final StoredBlobRepository storedBlobRepository;
+  private final boolean enabled;
+  private final int parallelism;
+  private final int batchSize;
+  private final long minAgeMillis;
+  private final int quarantineDays;
+  private final boolean scrubContent;
+  private final Set<String> excludedFolders;
+  private final Throttle fileThrottle;
+  private final Throttle byteThrottle;
+
+  private final AtomicBoolean running = new AtomicBoolean();
+  private final AtomicInteger danglingLogged = new AtomicInteger();
+  private final MeterRegistry meterRegistry;
+  private final Counter danglingCounter;
+  private final Counter corruptCounter;
+
+  public UploadGarbageCollector(
+      BlobStore blobStore,
+      ImageCache imageCache,
+      ChartToothImageRepository chartToothImageRepository,
+      ChartRepository chartRepository,
+      SoftTissueExaminationRepository softTissueExaminationRepository,
+      ClinicalFileRepository clinicalFileRepository,
+      StoredBlobRepository storedBlobRepository,
+      MeterRegistry meterRegistry,
+      @Value("${app.upload.gc.enabled:false}") boolean enabled,
+      @Value("${app.upload.gc.parallelism:4}") int parallelism,
+      @Value("${app.upload.gc.batch-size:200}") int batchSize,
+      @Value("${app.upload.gc.min-age-hours:24}") long minAgeHours,
+      @Value("${app.upload.gc.quarantine-days:7}") int quarantineDays,
+      @Value("${app.upload.gc.scrub-content:true}") boolean scrubContent,
+      @Value("${app.upload.gc.excluded-folders:}") String excludedFolders,
+      @Value("${app.upload.gc.max-files-per-second:500}") long maxFilesPerSecond,
+      @Value("${app.upload.gc.max-bytes-per-second:10485760}") long maxBytesPerSecond) {
+    this.blobStore = blobStore;
+    this.imageCache = imageCache;
+    this.chartToothImageRepository = chartToothImageRepository;
+    this.chartRepository = chartRepository;
+    this.softTissueExaminationRepository = softTissueExaminationRepository;
+    this.clinicalFileRepository = clinicalFileRepository;
+    this.storedBlobRepository = storedBlobRepository;
+    this.enabled = enabled;
+    this.parallelism = Math.max(1, parallelism);
+    // Two candidate paths per key go into each IN list; Oracle allows at most 1000
+    this.batchSize = Math.max(1, Math.min(batchSize, 500));
+    this.minAgeMillis = TimeUnit.HOURS.toMillis(minAgeHours);
+    this.quarantineDays = quarantineDays;
+    this.scrubContent = scrubContent;
+    this.excludedFolders =
+        Arrays.stream(excludedFolders.split(","))
+            .map(String::trim)
+            .filter(folder -> !folder.isEmpty())
+            .collect(Collectors.toSet());
+    this.fileThrottle = new Throttle(maxFilesPerSecond);
+    this.byteThrottle = new Throttle(maxBytesPerSecond);
+
+    this.meterRegistry = meterRegistry;
+    this.danglingCounter =
+        Counter.builder("dentapp.storage.gc.dangling")
+            .description("Stored paths whose file does not exist")
+            .register(meterRegistry);
+    this.corruptCounter =
+        Counter.builder("dentapp.storage.gc.corrupt")
+            .description("Content-addressed blobs whose bytes do not match their hash")
+            .register(meterRegistry);
+    Gauge.builder("dentapp.storage.gc.running", running, flag -> flag.get() ? 1 : 0)
+        .description("Whether an upload garbage collection is in progress")
+        .register(meterRegistry);
+  }
+
+  @Scheduled(
+      fixedDelayString = "${app.upload.gc.interval:86400000}",
+      initialDelayString = "${app.upload.gc.initial-delay:600000}")
+  public void scheduledRun() {
+    if (!enabled || !running.compareAndSet(false, true)) {
+      return;
+    }
+
+    // A run can take hours, so it gets its own thread instead of the shared scheduler's
+    Thread thread =
+        new Thread(
+            () -> {
+              try {
+                collect();
+              } finally {
+                running.set(false);
+              }
+            },
+            "upload-gc");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void collect() {
+    long start = System.currentTimeMillis();
+    danglingLogged.set(0);
+    log.info("Upload garbage collection started");
+    try {
+      sweep();
+      scrubReferences();
+      purgeQuarantine();
+      log.info(
+          "Upload garbage collection finished in {}s",
+          TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis() - start));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException | RuntimeException e) {
+      log.warn("Upload garbage collection stopped: {}", e.getMessage());
+    }
+  }
+
+  private void sweep() throws IOException, InterruptedException {
+    ExecutorService workers = workers();
+    List<String> batch = new ArrayList<>(batchSize);
+    try {
+      blobStore.list(
+          "",
+          key -> {
+            if (key.startsWith(QUARANTINE_ROOT + "/") || isExcluded(key)) {
+              return;
+            }
+            batch.add(key);
+            if (batch.size() == batchSize) {
+              List<String> keys = new ArrayList<>(batch);
+              batch.clear();
+              workers.execute(() -> sweepBatch(keys));
+            }
+          });
+      if (!batch.isEmpty()) {
+        workers.execute(() -> sweepBatch(batch));
+      }
+    } finally {
+      await(workers);
+    }
+  }
+
+  private void sweepBatch(List<String> keys) {
+    try {
+      Set<String> candidates = new HashSet<>();
+      List<String> hashes = new ArrayList<>();
+      for (String key : keys) {
+        String base = baseOf(key);
+        candidates.add(base);
+        candidates.add(UploadPathLayout.unsharded(base));
+        if (ContentAddressedStore.isBlobPath(key)) {
+          hashes.add(hashOf(key));
+        }
+      }
+      Set<String> referenced = referencedPaths(candidates);
+      Map<String, StoredBlob> blobs = new HashMap<>();
+      for (StoredBlob blob : storedBlobRepository.findAllById(hashes)) {
+        blobs.put(blob.getContentHash(), blob);
+      }
+
+      long cutoff = System.currentTimeMillis() - minAgeMillis;
+      for (String key : keys) {
+        sweepFile(key, referenced, blobs, cutoff);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      count("failed");
+      log.warn("Could not sweep a batch of uploads: {}", e.getMessage());
+    }
+  }
+
+  private void sweepFile(
+      String key, Set<String> referenced, Map<String, StoredBlob> blobs, long cutoff)
+      throws InterruptedException {
+    fileThrottle.acquire(1);
+    count("scanned");
+    try {
+      Optional<BlobInfo> info = blobStore.stat(key);
+      if (info.isEmpty()) {
+        return;
+      }
+      if (info.get().getLastModified() >= cutoff) {
+        // Possibly written a moment ago by a save that has not stored its path yet
+        count("young");
+        return;
+      }
+      if (key.startsWith(ContentAddressedStore.ROOT + "/tmp/")) {
+        // Left behind by a streaming store that never finished
+        blobStore.delete(key);
+        count("temp");
+        return;
+      }
+
+      String base = baseOf(key);
+      boolean inUse =
+          referenced.contains(base) || referenced.contains(UploadPathLayout.unsharded(base));
+      if (!inUse && ContentAddressedStore.isBlobPath(key)) {
+        String hash = hashOf(key);
+        StoredBlob blob = blobs.get(hash);
+        // A row is only deleted if it still has no references and was not touched since cutoff
+        inUse =
+            blob != null
+                && (blob.getRefCount() > 0
+                    || storedBlobRepository.deleteUnreferenced(hash, dateTime(cutoff)) == 0);
+      }
+
+      if (inUse) {
+        count("referenced");
+        if (scrubContent && ContentAddressedStore.isBlobPath(key)) {
+          verify(key, info.get().getSize());
+        }
+        return;
+      }
+
+      String quarantined = quarantine(key, info.get().getSize());
+      if (ContentAddressedStore.isBlobPath(key)
+          && storedBlobRepository.existsById(hashOf(key))) {
+        // The same image was stored again while the blob was being moved
+        move(quarantined, key, info.get().getSize());
+        count("restored");
+      }
+    } catch (IOException | RuntimeException e) {
+      count("failed");
+      log.warn("Could not sweep {}: {}", key, e.getMessage());
+    }
+  }
+
+  /** Which of {@code candidates} are stored in any path column */
+  private Set<String> referencedPaths(Set<String> candidates) {
+    List<String> paths = new ArrayList<>(candidates);
+    Set<String> referenced = new HashSet<>(chartToothImageRepository.findStoredPaths(paths));
+    for (Object[] row : chartRepository.findStoredSpritePaths(paths)) {
+      addPaths(referenced, row);
+    }
+    for (Object[] row : softTissueExaminationRepository.findStoredImagePaths(paths)) {
+      addPaths(referenced, row);
+    }
+    referenced.addAll(clinicalFileRepository.findStoredPaths(paths));
+    return referenced;
+  }
+
+  private String quarantine(String key, long size) throws IOException, InterruptedException {
+    String target = QUARANTINE_ROOT + "/" + LocalDate.now().format(DAY) + "/" + key;
+    move(key, target, size);
+    imageCache.invalidate(key);
+    count("quarantined");
+    log.info("Quarantined unreferenced upload {}", key);
+    return target;
+  }
+
+  private void move(String from, String to, long size) throws IOException, InterruptedException {
+    Optional<Path> localFile = blobStore.localPath(from);
+    if (localFile.isPresent()) {
+      // The local store renames instead of copying
+      blobStore.putFile(to, localFile.get());
+    } else {
+      byteThrottle.acquire(size);
+      try (InputStream data = blobStore.open(from)) {
+        blobStore.put(to, data, size);
+      }
+    }
+    blobStore.delete(from);
+  }
+
+  /** Re-hashes a content-addressed blob and reports it if its bytes no longer match its name */
+  private void verify(String key, long size) throws IOException, InterruptedException {
+    byteThrottle.acquire(size);
+    MessageDigest digest = sha256();
+    try (InputStream data = new DigestInputStream(blobStore.open(key), digest)) {
+      data.transferTo(OutputStream.nullOutputStream());
+    }
+    if (!HexFormat.of().formatHex(digest.digest()).equals(hashOf(key))) {
+      corruptCounter.increment();
+      log.error("Content-addressed blob {} does not match its hash", key);
+    }
+  }
+
+  /** Checks that every stored path still has its file */
+  private void scrubReferences() throws InterruptedException {
+    ExecutorService workers = workers();
+    try {
+      long afterId = 0;
+      List<Object[]> rows;
+      do {
+        rows = chartToothImageRepository.findPathRows(afterId, PageRequest.of(0, batchSize));
+        checkRows(workers, "CHART_TOOTH_IMAGE", rows);
+        afterId = rows.isEmpty() ? afterId : (Long) rows.get(rows.size() - 1)[0];
+      } while (rows.size() == batchSize);
+
+      afterId = 0;
+      do {
+        rows = chartRepository.findSpritePathRows(afterId, PageRequest.of(0, batchSize));
+        checkRows(workers, "CHART", rows);
+        afterId = rows.isEmpty() ? afterId : (Long) rows.get(rows.size() - 1)[0];
+      } while (rows.size() == batchSize);
+
+      afterId = 0;
+      do {
+        rows =
+            softTissueExaminationRepository.findImagePathRows(
+                afterId, PageRequest.of(0, batchSize));
+        checkRows(workers, "SOFT_TISSUE_EXAMINATION", rows);
+        afterId = rows.isEmpty() ? afterId : (Long) rows.get(rows.size() - 1)[0];
+      } while (rows.size() == batchSize);
+
+      afterId = 0;
+      do {
+        rows = clinicalFileRepository.findPathRows(afterId, PageRequest.of(0, batchSize));
+        checkRows(workers, "CLINICAL_FILE", rows);
+        afterId = rows.isEmpty() ? afterId : (Long) rows.get(rows.size() - 1)[0];
+      } while (rows.size() == batchSize);
+    } finally {
+      await(workers);
+    }
+  }
+
+  // Each row is (id, path, path, ...); null paths are skipped
+  private void checkRows(ExecutorService workers, String table, List<Object[]> rows) {
+    if (rows.isEmpty()) {
+      return;
+    }
+    workers.execute(
+        () -> {
+          try {
+            for (Object[] row : rows) {
+              for (int column = 1; column < row.length; column++) {
+                if (row[column] != null) {
+                  checkReference(table, (Long) row[0], (String) row[column]);
+                }
+              }
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+  }
+
+  private void checkReference(String table, Long id, String path) throws InterruptedException {
+    fileThrottle.acquire(1);
+    try {
+      boolean exists =
+          blobStore.exists(path)
+              || (UploadPathLayout.isLegacy(path)
+                  && blobStore.exists(UploadPathLayout.toSharded(path)));
+      if (!exists) {
+        danglingCounter.increment();
+        if (danglingLogged.incrementAndGet() <= MAX_LOGGED_DANGLING) {
+          log.warn("Dangling reference in {} {}: {}", table, id, path);
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      log.warn("Could not check {} of {} {}: {}", path, table, id, e.getMessage());
+    }
+  }
+
+  /** Deletes quarantined files once their day is older than quarantine-days */
+  private void purgeQuarantine() throws IOException {
+    LocalDate oldestKept = LocalDate.now().minusDays(quarantineDays);
+    List<String> expired = new ArrayList<>();
+    blobStore.list(
+        QUARANTINE_ROOT + "/",
+        key -> {
+          String[] segments = key.split("/", 3);
+          try {
+            if (segments.length == 3 && LocalDate.parse(segments[1], DAY).isBefore(oldestKept)) {
+              expired.add(key);
+            }
+          } catch (DateTimeParseException e) {
+            // Not written by this collector
+          }
+        });
+
+    for (String key : expired) {
+      blobStore.delete(key);
+      count("purged");
+    }
+  }
+
+  private ExecutorService workers() {
+    // A full queue makes the listing thread run the batch itself, which bounds memory
+    return new ThreadPoolExecutor(
+        parallelism,
+        parallelism,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(parallelism),
+        runnable -> {
+          Thread thread = new Thread(runnable, "upload-gc-worker");
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.CallerRunsPolicy());
+  }
+
+  private static void await(ExecutorService workers) throws InterruptedException {
+    workers.shutdown();
+    if (!workers.awaitTermination(1, TimeUnit.DAYS)) {
+      workers.shutdownNow();
+    }
+  }
+
+  private void count(String outcome) {
+    Counter.builder("dentapp.storage.gc.files")
+        .description("Uploaded files processed by the garbage collector")
+        .tag("outcome", outcome)
+        .register(meterRegistry)
+        .increment();
+  }
+
+  /** Folders under patient_N/ that are listed in excluded-folders */
+  private boolean isExcluded(String key) {
+    String[] segments = key.split("/", 3);
+    return segments.length == 3
+        && segments[0].startsWith("patient_")
+        && excludedFolders.contains(segments[1]);
+  }
+
+  /** A WebP derivative belongs to its PNG and lives exactly as long as it */
+  private static String baseOf(String key) {
+    return key.endsWith(ImageOptimizer.WEBP_SUFFIX)
+        ? key.substring(0, key.length() - ImageOptimizer.WEBP_SUFFIX.length())
+        : key;
+  }
+
+  private static String hashOf(String blobPath) {
+    String fileName = blobPath.substring(blobPath.lastIndexOf('/') + 1);
+    int dot = fileName.indexOf('.');
+    return dot < 0 ? fileName : fileName.substring(0, dot);
+  }
+
+  private static void addPaths(Set<String> paths, Object[] row) {
+    for (Object path : row) {
+      if (path != null) {
+        paths.add((String) path);
+      }
+    }
+  }
+
+  private static LocalDateTime dateTime(long epochMillis) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      // Every Java platform is required to support SHA-256
+      throw new IllegalStateException("SHA-256 not available", e);
+    }
+  }
+
+  /** Hands out at most {@code perSecond} permits per second, spread evenly; 0 means unlimited */
+  private static class Throttle {
+    private final double nanosPerPermit;
+    private long next = System.nanoTime();
+
+    Throttle(long perSecond) {
+      this.nanosPerPermit = perSecond > 0 ? 1e9 / perSecond : 0;
+    }
+
+    void acquire(long permits) throws InterruptedException {
+      if (nanosPerPermit == 0) {
+        return;
+      }
+      long wait;
+      synchronized (this) {
+        long now = System.nanoTime();
+        next = Math.max(next, now);
+        wait = next - now;
+        next += (long) (permits * nanosPerPermit);
+      }
+      if (wait > 0) {
+        TimeUnit.NANOSECONDS.sleep(wait);
+      }
+    }
+  }
+}
@@ -0,0 +1,244 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import cmsc128.dentapp.modules.chart.repositories.ChartRepository;
+import cmsc128.dentapp.modules.chart.repositories.ChartToothImageRepository;
+import cmsc128.dentapp.modules.soft_tissue_examination.repositories.SoftTissueExaminationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Moves files stored under legacy patient_N/category/file paths into the sharded layout of
+ * {@link UploadPathLayout} and rewrites the paths stored in CHART_TOOTH_IMAGE, the chart sprites
+ * and SOFT_TISSUE_EXAMINATION. Enabled with app.upload.layout-migration.enabled; runs once in the
+ * background after startup, batch-size rows at a time with a pause between batches, and can be
+ * rerun safely.
+ *
+ * <p>Each file is copied first, then its rows are updated in one transaction per batch, and only
+ * then is the old file deleted. A row is only updated if it still holds the old path, so an image
+ * replaced while the migration runs keeps its new path and the unused copy is removed. Until a row
+ * is updated, FileStorageService and ImageController resolve its legacy path to the moved file.
+ */
+@Component
+@Slf4j
+public class UploadLayoutMigrator {
+
+  private final BlobStore blobStore;
+  private final ImageCache imageCache;
+  private final ChartToothImageRepository chartToothImageRepository;
+  private final ChartRepository chartRepository;
+  private final SoftTissueExaminationRepository softTissueExaminationRepository;
+  private final TransactionTemplate transactionTemplate;
+  private final boolean enabled;
+  private final int batchSize;
+  private final long pauseMillis;
+
+  private final Counter movedCounter;
+  private final Counter staleCounter;
+  private final Counter missingCounter;
+  private final Counter failedCounter;
+
+  public UploadLayoutMigrator(
+      BlobStore blobStore,
+      ImageCache imageCache,
+      ChartToothImageRepository chartToothImageRepository,
+      ChartRepository chartRepository,
+      SoftTissueExaminationRepository softTissueExaminationRepository,
+      TransactionTemplate transactionTemplate,
+      MeterRegistry meterRegistry,
+      @Value("${app.upload.layout-migration.enabled:false}") boolean enabled,
+      @Value("${app.upload.layout-migration.batch-size:200}") int batchSize,
+      @Value("${app.upload.layout-migration.pause-ms:100}") long pauseMillis) {
+    this.blobStore = blobStore;
+    this.imageCache = imageCache;
+    this.chartToothImageRepository = chartToothImageRepository;
+    this.chartRepository = chartRepository;
+    this.softTissueExaminationRepository = softTissueExaminationRepository;
+    this.transactionTemplate = transactionTemplate;
+    this.enabled = enabled;
+    this.batchSize = batchSize;
+    this.pauseMillis = pauseMillis;
+
+    // outcome=moved: file and row moved, stale: row changed meanwhile, missing: no file,
+    // failed: could not be copied
+    this.movedCounter = counter(meterRegistry, "moved");
+    this.staleCounter = counter(meterRegistry, "stale");
+    this.missingCounter = counter(meterRegistry, "missing");
+    this.failedCounter = counter(meterRegistry, "failed");
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  public void start() {
+    if (!enabled) {
+      return;
+    }
+
+    Thread thread = new Thread(this::migrateAll, "upload-layout-migrator");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private void migrateAll() {
+    log.info("Moving uploaded files into the sharded layout");
+    try {
+      migrateToothImages();
+      migrateSprites();
+      migrateSoftTissueImages();
+      log.info("Upload layout migration finished");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (RuntimeException e) {
+      log.warn("Upload layout migration stopped: {}", e.getMessage());
+    }
+  }
+
+  private void migrateToothImages() throws InterruptedException {
+    long afterId = 0;
+    List<Object[]> rows;
+    do {
+      rows = chartToothImageRepository.findPathRows(afterId, PageRequest.of(0, batchSize));
+      List<Move> moves = new ArrayList<>();
+      for (Object[] row : rows) {
+        addMove(moves, (Long) row[0], (String) row[1], chartToothImageRepository::updateImagePath);
+        afterId = (Long) row[0];
+      }
+      apply(moves);
+    } while (rows.size() == batchSize);
+  }
+
+  private void migrateSprites() throws InterruptedException {
+    long afterId = 0;
+    List<Object[]> rows;
+    do {
+      rows = chartRepository.findSpritePathRows(afterId, PageRequest.of(0, batchSize));
+      List<Move> moves = new ArrayList<>();
+      for (Object[] row : rows) {
+        addMove(moves, (Long) row[0], (String) row[1], chartRepository::updateSpritePath);
+        addMove(moves, (Long) row[0], (String) row[2], chartRepository::updateThumbnailPath);
+        afterId = (Long) row[0];
+      }
+      apply(moves);
+    } while (rows.size() == batchSize);
+  }
+
+  private void migrateSoftTissueImages() throws InterruptedException {
+    long afterId = 0;
+    List<Object[]> rows;
+    do {
+      rows =
+          softTissueExaminationRepository.findImagePathRows(afterId, PageRequest.of(0, batchSize));
+      List<Move> moves = new ArrayList<>();
+      for (Object[] row : rows) {
+        for (int column = 1; column <= 4; column++) {
+          addMove(
+              moves,
+              (Long) row[0],
+              (String) row[column],
+              softTissueExaminationRepository::updateImagePath);
+        }
+        afterId = (Long) row[0];
+      }
+      apply(moves);
+    } while (rows.size() == batchSize);
+  }
+
+  /** Copies the file to its sharded path and queues the row update, if the path is legacy */
+  private void addMove(List<Move> moves, Long id, String oldPath, PathUpdate update) {
+    if (!UploadPathLayout.isLegacy(oldPath)) {
+      return;
+    }
+
+    String newPath = UploadPathLayout.toSharded(oldPath);
+    try {
+      if (!blobStore.exists(newPath)) {
+        Optional<BlobInfo> source = blobStore.stat(oldPath);
+        if (source.isEmpty()) {
+          missingCounter.increment();
+          return;
+        }
+        try (InputStream data = blobStore.open(oldPath)) {
+          blobStore.put(newPath, data, source.get().getSize());
+        }
+      }
+      moves.add(new Move(id, oldPath, newPath, update));
+    } catch (IOException e) {
+      failedCounter.increment();
+      log.warn("Could not move {}: {}", oldPath, e.getMessage());
+    }
+  }
+
+  /** Rewrites the batch's rows, then deletes whichever copy of each file is no longer used */
+  private void apply(List<Move> moves) throws InterruptedException {
+    if (moves.isEmpty()) {
+      return;
+    }
+
+    boolean[] updated = new boolean[moves.size()];
+    transactionTemplate.executeWithoutResult(
+        status -> {
+          for (int i = 0; i < moves.size(); i++) {
+            Move move = moves.get(i);
+            updated[i] = move.update.apply(move.id, move.oldPath, move.newPath) > 0;
+          }
+        });
+
+    for (int i = 0; i < moves.size(); i++) {
+      Move move = moves.get(i);
+      if (updated[i]) {
+        delete(move.oldPath);
+        // A WebP derivative of the old file is not moved; it is recreated only for new uploads
+        delete(move.oldPath + ImageOptimizer.WEBP_SUFFIX);
+        movedCounter.increment();
+      } else {
+        delete(move.newPath);
+        staleCounter.increment();
+      }
+    }
+
+    if (pauseMillis > 0) {
+      Thread.sleep(pauseMillis);
+    }
+  }
+
+  private void delete(String relativePath) {
+    imageCache.invalidate(relativePath);
+    try {
+      blobStore.delete(relativePath);
+    } catch (IOException e) {
+      log.warn("Could not delete {}: {}", relativePath, e.getMessage());
+    }
+  }
+
+  private static Counter counter(MeterRegistry meterRegistry, String outcome) {
+    return Counter.builder("dentapp.storage.layout-migration.files")
+        .description("Stored paths processed by the upload layout migration")
+        .tag("outcome", outcome)
+        .register(meterRegistry);
+  }
+
+  private interface PathUpdate {
+    int apply(Long id, String oldPath, String newPath);
+  }
+
+  @AllArgsConstructor
+  private static class Move {
+    private final Long id;
+    private final String oldPath;
+    private final String newPath;
+    private final PathUpdate update;
+  }
+}
@@ -0,0 +1,48 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of uploaded file paths. Files are sharded two levels deep by a hash of their name, e.g.
+ * patient_5/dental_charts/3f/a2/teeth11_20240101_101500_ab12cd34.png, so no directory grows
+ * past a few hundred entries. Legacy paths (patient_5/dental_charts/teeth11_...png) are still
+ * valid; {@link #toSharded} gives the location they are moved to by UploadLayoutMigrator.
+ */
+public final class UploadPathLayout {
+
+  private UploadPathLayout() {}
+
+  /** Path of a new file in a folder such as patient_5/dental_charts */
+  public static String sharded(String folder, String fileName) {
+    String hash = ContentAddressedStore.hash(fileName.getBytes(StandardCharsets.UTF_8));
+    return folder + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + fileName;
+  }
+
+  /** Whether the path is patient_N/category/file, i.e. written before sharding */
+  public static boolean isLegacy(String relativePath) {
+    return relativePath != null
+        && relativePath.startsWith("patient_")
+        && relativePath.chars().filter(c -> c == '/').count() == 2;
+  }
+
+  /** The sharded location of a legacy path; other paths are returned unchanged */
+  public static String toSharded(String relativePath) {
+    if (!isLegacy(relativePath)) {
+      return relativePath;
+    }
+    int slash = relativePath.lastIndexOf('/');
+    return sharded(relativePath.substring(0, slash), relativePath.substring(slash + 1));
+  }
+
+  /**
+   * The legacy path a sharded path was moved from, i.e. patient_N/category/file; other paths are
+   * returned unchanged
+   */
+  public static String unsharded(String relativePath) {
+    String[] segments = relativePath == null ? new String[0] : relativePath.split("/");
+    if (segments.length != 5 || !segments[0].startsWith("patient_")) {
+      return relativePath;
+    }
+    return segments[0] + "/" + segments[1] + "/" + segments[4];
+  }
+}
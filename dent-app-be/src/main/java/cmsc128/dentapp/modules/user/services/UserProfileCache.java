@@ -0,0 +1,83 @@
+package cmsc128.dentapp.modules.user.services;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import cmsc128.dentapp.Entities.DTO.UserDto;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+/**
+ * In-memory cache of user profiles keyed by userId, with a username index for lookups by name.
+ * Entries are evicted by UserServiceImpl whenever a user is updated, activated, deactivated or
+ * deleted. Hit and miss counts are published as cache.gets{cache=userProfiles}.
+ */
+@Component
+public class UserProfileCache {
+
+  private final Cache<Long, UserDto> profiles;
+  private final Cache<String, Long> userIdsByUsername;
+
+  public UserProfileCache(
+      MeterRegistry meterRegistry,
+      @Value("${app.user-cache.max-size:5000}") long maxSize,
+      @Value("${app.user-cache.ttl:600}") long ttlSeconds) {
+    this.profiles =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .recordStats()
+            .build();
+    this.userIdsByUsername =
+        Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+            .build();
+    CaffeineCacheMetrics.monitor(meterRegistry, profiles, "userProfiles");
+  }
+
+  /** Returns the cached profile, calling the loader (usually a repository lookup) on a miss */
+  public Optional<UserDto> getByUserId(Long userId, Function<Long, Optional<UserDto>> loader) {
+    UserDto profile = profiles.get(userId, id -> loader.apply(id).orElse(null));
+    if (profile != null) {
+      userIdsByUsername.put(profile.getUsername(), profile.getUserId());
+    }
+    return Optional.ofNullable(profile);
+  }
+
+  public Optional<UserDto> getByUsername(
+      String username, Function<String, Optional<UserDto>> loader) {
+    Long userId = userIdsByUsername.getIfPresent(username);
+    if (userId != null) {
+      UserDto profile = profiles.getIfPresent(userId);
+      // A renamed user's profile may have been reloaded under the new name
+      if (profile != null && profile.getUsername().equals(username)) {
+        return Optional.of(profile);
+      }
+    }
+
+    Optional<UserDto> profile = loader.apply(username);
+    profile.ifPresent(
+        dto -> {
+          profiles.put(dto.getUserId(), dto);
+          userIdsByUsername.put(dto.getUsername(), dto.getUserId());
+        });
+    return profile;
+  }
+
+  /**
+   * Drops the user's profile and every username that maps to it. The profile may already have
+   * been evicted, so the usernames are found by id rather than through the profile.
+   */
+  public void invalidate(Long userId) {
+    userIdsByUsername.asMap().values().removeIf(userId::equals);
+    profiles.invalidate(userId);
+  }
+}
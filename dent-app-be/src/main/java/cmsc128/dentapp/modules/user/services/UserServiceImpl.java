@@ -20,6 +20,8 @@ public class UserServiceImpl implements UserService {
 
   @Autowired private PasswordEncoder passwordEncoder;
 
+  @Autowired private UserProfileCache userProfileCache;
+
   @Override
   public UserDto signUp(SignUpRequestDto signUpRequest) {
     // Check if username already exists
@@ -52,12 +54,14 @@ public class UserServiceImpl implements UserService {
 
   @Override
   public Optional<UserDto> getUserById(Long userId) {
-    return userRepository.findById(userId).map(this::convertToDto);
+    return userProfileCache.getByUserId(
+        userId, id -> userRepository.findById(id).map(this::convertToDto));
   }
 
   @Override
   public Optional<UserDto> getUserByUsername(String username) {
-    return userRepository.findByUsername(username).map(this::convertToDto);
+    return userProfileCache.getByUsername(
+        username, name -> userRepository.findByUsername(name).map(this::convertToDto));
   }
 
   @Override
@@ -125,6 +129,7 @@ public class UserServiceImpl implements UserService {
     }
 
     User savedUser = userRepository.save(user);
+    userProfileCache.invalidate(userId);
     return convertToDto(savedUser);
   }
 
@@ -139,6 +144,7 @@ public class UserServiceImpl implements UserService {
     User user = userOptional.get();
     user.setIsActive(false);
     userRepository.save(user);
+    userProfileCache.invalidate(userId);
     return true;
   }
 
@@ -153,6 +159,7 @@ public class UserServiceImpl implements UserService {
     User user = userOptional.get();
     user.setIsActive(true);
     userRepository.save(user);
+    userProfileCache.invalidate(userId);
     return true;
   }
 
@@ -167,6 +174,7 @@ public class UserServiceImpl implements UserService {
     User user = userOptional.get();
     user.setIsActive(false);
     userRepository.save(user);
+    userProfileCache.invalidate(userId);
     return true;
   }
 
@@ -0,0 +1,61 @@
+package cmsc128.dentapp.Security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class PublicRoutesTest {
+
+  @Test
+  void matchesExactRoutesOnly() {
+    assertEquals("/auth/login", PublicRoutes.match("/auth/login", 0));
+    assertEquals("/user/signup", PublicRoutes.match("/user/signup", 0));
+    assertEquals("/auth/refresh", PublicRoutes.match("/auth/refresh", 0));
+    assertEquals("/auth/refresh-token", PublicRoutes.match("/auth/refresh-token", 0));
+
+    assertNull(PublicRoutes.match("/auth/loginx", 0));
+    assertNull(PublicRoutes.match("/auth/login/extra", 0));
+    assertNull(PublicRoutes.match("/auth/log", 0));
+    assertNull(PublicRoutes.match("/auth/logout", 0));
+  }
+
+  @Test
+  void subtreeRoutesMatchThemselvesAndEverythingBelow() {
+    assertEquals("/actuator/**", PublicRoutes.match("/actuator", 0));
+    assertEquals("/actuator/**", PublicRoutes.match("/actuator/health", 0));
+    assertEquals("/v3/api-docs/**", PublicRoutes.match("/v3/api-docs/swagger-config", 0));
+    assertEquals("/swagger-ui/**", PublicRoutes.match("/swagger-ui/index.html", 0));
+
+    // A longer segment that only starts with the route is not below it
+    assertNull(PublicRoutes.match("/actuatorx", 0));
+    assertNull(PublicRoutes.match("/swagger-uix/index.html", 0));
+  }
+
+  @Test
+  void exactRouteSharingAPrefixWithASubtree() {
+    assertEquals("/swagger-ui.html", PublicRoutes.match("/swagger-ui.html", 0));
+    assertNull(PublicRoutes.match("/swagger-ui.htm", 0));
+  }
+
+  @Test
+  void matchesFromTheOffset() {
+    assertEquals("/auth/login", PublicRoutes.match("/dentapp/auth/login", "/dentapp".length()));
+    assertNull(PublicRoutes.match("/dentapp/auth/login", 0));
+  }
+
+  @Test
+  void protectedAndNonAsciiPathsDoNotMatch() {
+    assertNull(PublicRoutes.match("/", 0));
+    assertNull(PublicRoutes.match("", 0));
+    assertNull(PublicRoutes.match("/patients/1", 0));
+    assertNull(PublicRoutes.match("/auth/l\u00f6gin", 0));
+  }
+
+  @Test
+  void patternsReturnsACopy() {
+    String[] patterns = PublicRoutes.patterns();
+    patterns[0] = "/changed";
+    assertEquals("/auth/login", PublicRoutes.patterns()[0]);
+  }
+}
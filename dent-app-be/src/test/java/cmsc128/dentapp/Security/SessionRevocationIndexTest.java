@@ -0,0 +1,112 @@
+package cmsc128.dentapp.Security;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.LocalDateTime;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import cmsc128.dentapp.Utils.JwtTokenUtil;
+import cmsc128.dentapp.modules.session.repositories.UserSessionRepository;
+
+class SessionRevocationIndexTest {
+
+  private static final long ACCESS_TOKEN_MILLIS = 15 * 60 * 1000;
+
+  private final UserSessionRepository userSessionRepository = mock(UserSessionRepository.class);
+
+  private SessionRevocationIndex index(long retentionMillis) {
+    JwtTokenUtil jwtTokenUtil = mock(JwtTokenUtil.class);
+    when(jwtTokenUtil.getAccessTokenExpirationTime()).thenReturn(retentionMillis);
+    return new SessionRevocationIndex(userSessionRepository, jwtTokenUtil, 1024);
+  }
+
+  private static Date secondsFromNow(long seconds) {
+    return new Date(System.currentTimeMillis() + seconds * 1000);
+  }
+
+  @Test
+  void revokedSessionIsRejectedAndOthersAreNot() {
+    SessionRevocationIndex index = index(ACCESS_TOKEN_MILLIS);
+    index.revokeSession("session-a");
+
+    assertTrue(index.isRevoked("session-a", 1L, secondsFromNow(0)));
+    assertFalse(index.isRevoked("session-b", 1L, secondsFromNow(0)));
+    assertFalse(index.isRevoked(null, 1L, secondsFromNow(0)));
+  }
+
+  @Test
+  void userCutoffRejectsOnlyTokensIssuedBeforeIt() {
+    SessionRevocationIndex index = index(ACCESS_TOKEN_MILLIS);
+    index.revokeAllForUser(7L);
+
+    assertTrue(index.isRevoked("any", 7L, secondsFromNow(-5)));
+    assertFalse(index.isRevoked("any", 7L, secondsFromNow(5)));
+    // Other users and tokens without an iat are not affected by the cutoff
+    assertFalse(index.isRevoked("any", 8L, secondsFromNow(-5)));
+    assertFalse(index.isRevoked("any", 7L, null));
+  }
+
+  @Test
+  void tokenIssuedInTheCutoffSecondIsNotRejected() {
+    SessionRevocationIndex index = index(ACCESS_TOKEN_MILLIS);
+    index.revokeAllForUser(7L);
+    long now = System.currentTimeMillis();
+
+    // iat is truncated to the second, so a token issued right after the cutoff must still pass
+    assertFalse(index.isRevoked("any", 7L, new Date(now - now % 1000)));
+  }
+
+  @Test
+  void pruneForgetsSessionsRevokedBeforeTheRetention() {
+    LocalDateTime now = LocalDateTime.now();
+    when(userSessionRepository.findRevokedSessionsSince(any()))
+        .thenReturn(
+            List.of(
+                new Object[] {"old-session", now.minusHours(2)},
+                new Object[] {"recent-session", now.minusMinutes(1)}));
+    SessionRevocationIndex index = index(ACCESS_TOKEN_MILLIS);
+    index.preload();
+
+    assertTrue(index.isRevoked("old-session", null, null));
+    assertTrue(index.isRevoked("recent-session", null, null));
+
+    index.prune();
+
+    assertFalse(index.isRevoked("old-session", null, null));
+    assertTrue(index.isRevoked("recent-session", null, null));
+  }
+
+  @Test
+  void sessionRevokedAfterAPruneIsStillRejected() {
+    LocalDateTime now = LocalDateTime.now();
+    when(userSessionRepository.findRevokedSessionsSince(any()))
+        .thenReturn(List.<Object[]>of(new Object[] {"old-session", now.minusHours(2)}));
+    SessionRevocationIndex index = index(ACCESS_TOKEN_MILLIS);
+    index.preload();
+
+    index.prune();
+    index.revokeSession("new-session");
+
+    assertTrue(index.isRevoked("new-session", null, null));
+  }
+
+  @Test
+  void pruneForgetsUserCutoffsOnceTheRetentionHasPassed() throws InterruptedException {
+    SessionRevocationIndex index = index(0);
+    index.revokeAllForUser(7L);
+    Date issuedAt = secondsFromNow(-5);
+    assertTrue(index.isRevoked(null, 7L, issuedAt));
+
+    Thread.sleep(5);
+    index.prune();
+
+    assertFalse(index.isRevoked(null, 7L, issuedAt));
+  }
+}
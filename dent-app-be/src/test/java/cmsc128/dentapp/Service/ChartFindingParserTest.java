@@ -0,0 +1,117 @@
+package cmsc128.dentapp.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import cmsc128.dentapp.modules.chart.entities.Chart;
+import cmsc128.dentapp.modules.chart.entities.ChartToothFinding;
+import cmsc128.dentapp.modules.chart.entities.FindingType;
+import cmsc128.dentapp.modules.chart.entities.ToothSurface;
+
+class ChartFindingParserTest {
+
+  private static Chart chart(String treatmentPlans, String lesionStatuses, String icdasCodes) {
+    Chart chart = new Chart();
+    chart.setTreatmentPlans(treatmentPlans);
+    chart.setLesionStatuses(lesionStatuses);
+    chart.setIcdasCodes(icdasCodes);
+    return chart;
+  }
+
+  private static void assertFinding(
+      ChartToothFinding finding,
+      FindingType findingType,
+      int toothNumber,
+      ToothSurface surface,
+      String code) {
+    assertEquals(findingType, finding.getFindingType());
+    assertEquals(toothNumber, finding.getToothNumber());
+    assertEquals(surface, finding.getSurface());
+    assertEquals(code, finding.getCode());
+  }
+
+  @Test
+  void wholeToothCodeBecomesOneFinding() {
+    Chart chart = chart("{\"21\": \"0\"}", null, null);
+
+    List<ChartToothFinding> findings = ChartFindingParser.parse(chart);
+
+    assertEquals(1, findings.size());
+    assertFinding(findings.get(0), FindingType.TREATMENT_PLAN, 21, ToothSurface.WHOLE, "0");
+    assertSame(chart, findings.get(0).getChart());
+  }
+
+  @Test
+  void surfaceCodesBecomeOneFindingPerSurface() {
+    List<ChartToothFinding> findings =
+        ChartFindingParser.parse(
+            chart(null, null, "{\"16\": {\"center\": \"5\", \"top\": \"3\", \"left\": \" \"}}"));
+
+    // Surfaces come out in ToothSurface order and blank codes are skipped
+    assertEquals(2, findings.size());
+    assertFinding(findings.get(0), FindingType.ICDAS, 16, ToothSurface.TOP, "3");
+    assertFinding(findings.get(1), FindingType.ICDAS, 16, ToothSurface.CENTER, "5");
+  }
+
+  @Test
+  void everyCodedFieldIsParsed() {
+    List<ChartToothFinding> findings =
+        ChartFindingParser.parse(chart("{\"11\": \"A\"}", "{\"12\": \"B\"}", "{\"13\": \"C\"}"));
+
+    assertEquals(3, findings.size());
+    assertFinding(findings.get(0), FindingType.TREATMENT_PLAN, 11, ToothSurface.WHOLE, "A");
+    assertFinding(findings.get(1), FindingType.LESION_STATUS, 12, ToothSurface.WHOLE, "B");
+    assertFinding(findings.get(2), FindingType.ICDAS, 13, ToothSurface.WHOLE, "C");
+  }
+
+  @Test
+  void codesAreTrimmedAndNumbersAccepted() {
+    List<ChartToothFinding> findings =
+        ChartFindingParser.parse(chart("{\"11\": \" 2a \", \"55\": 4}", null, null));
+
+    assertEquals(2, findings.size());
+    assertFinding(findings.get(0), FindingType.TREATMENT_PLAN, 11, ToothSurface.WHOLE, "2a");
+    assertFinding(findings.get(1), FindingType.TREATMENT_PLAN, 55, ToothSurface.WHOLE, "4");
+  }
+
+  @Test
+  void unusableTeethAndCodesAreSkipped() {
+    String codes =
+        "{\"19\": \"1\", \"x\": \"1\", \"56\": \"1\", \"11\": null, \"12\": \"123456789\","
+            + " \"13\": [\"1\"], \"14\": {\"top\": {\"nested\": \"1\"}}}";
+
+    assertTrue(ChartFindingParser.parse(chart(codes, null, null)).isEmpty());
+  }
+
+  @Test
+  void fieldsThatAreNotJsonObjectsProduceNoFindings() {
+    assertTrue(ChartFindingParser.parse(chart("not json", "[\"11\"]", " ")).isEmpty());
+    assertTrue(ChartFindingParser.parse(chart(null, null, null)).isEmpty());
+  }
+
+  @Test
+  void toothNumberAcceptsPermanentAndPrimaryTeeth() {
+    assertEquals(11, ChartFindingParser.toothNumber("11"));
+    assertEquals(48, ChartFindingParser.toothNumber(" 48 "));
+    assertEquals(51, ChartFindingParser.toothNumber("51"));
+    assertEquals(85, ChartFindingParser.toothNumber("85"));
+  }
+
+  @Test
+  void toothNumberRejectsEverythingElse() {
+    assertNull(ChartFindingParser.toothNumber("10"));
+    assertNull(ChartFindingParser.toothNumber("19"));
+    assertNull(ChartFindingParser.toothNumber("49"));
+    assertNull(ChartFindingParser.toothNumber("56"));
+    assertNull(ChartFindingParser.toothNumber("86"));
+    assertNull(ChartFindingParser.toothNumber("91"));
+    assertNull(ChartFindingParser.toothNumber("1"));
+    assertNull(ChartFindingParser.toothNumber("molar"));
+  }
+}
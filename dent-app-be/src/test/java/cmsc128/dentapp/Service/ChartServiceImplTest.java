@@ -0,0 +1,45 @@
+package cmsc128.dentapp.Service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+class ChartServiceImplTest {
+
+  @Test
+  void parsesListedTeeth() {
+    assertEquals(Set.of(16, 26, 55), ChartServiceImpl.parseTeeth("16, 26,55"));
+  }
+
+  @Test
+  void expandsToothGroupsOverAllFourQuadrants() {
+    assertEquals(
+        Set.of(16, 17, 18, 26, 27, 28, 36, 37, 38, 46, 47, 48),
+        ChartServiceImpl.parseTeeth("molars"));
+    assertEquals(Set.of(14, 15, 24, 25, 34, 35, 44, 45), ChartServiceImpl.parseTeeth("Premolars"));
+    assertEquals(Set.of(13, 23, 33, 43), ChartServiceImpl.parseTeeth("canines"));
+    assertEquals(Set.of(11, 12, 21, 22, 31, 32, 41, 42), ChartServiceImpl.parseTeeth("INCISORS"));
+  }
+
+  @Test
+  void combinesGroupsAndTeeth() {
+    assertEquals(Set.of(13, 23, 33, 43, 11), ChartServiceImpl.parseTeeth("canines,11,13"));
+  }
+
+  @Test
+  void blankMeansNoRestriction() {
+    assertTrue(ChartServiceImpl.parseTeeth(null).isEmpty());
+    assertTrue(ChartServiceImpl.parseTeeth(" ").isEmpty());
+  }
+
+  @Test
+  void rejectsUnknownTeeth() {
+    assertThrows(IllegalArgumentException.class, () -> ChartServiceImpl.parseTeeth("16,19"));
+    assertThrows(IllegalArgumentException.class, () -> ChartServiceImpl.parseTeeth("wisdom"));
+    assertThrows(IllegalArgumentException.class, () -> ChartServiceImpl.parseTeeth("16,,26"));
+  }
+}
@@ -0,0 +1,71 @@
+package cmsc128.dentapp.Service;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+class LegacyPasswordEncoderTest {
+
+  // The lowest BCrypt cost keeps the hashing in these tests fast
+  private final LegacyPasswordEncoder encoder =
+      new LegacyPasswordEncoder(new BCryptPasswordEncoder(4), 4);
+
+  private static String legacyHash(String password) throws NoSuchAlgorithmException {
+    byte[] hash =
+        MessageDigest.getInstance("SHA-256").digest(password.getBytes(StandardCharsets.UTF_8));
+    return Base64.getEncoder().encodeToString(hash);
+  }
+
+  @Test
+  void legacyHashMatchesAndIsUpgraded() throws NoSuchAlgorithmException {
+    String encoded = legacyHash("secret");
+
+    assertTrue(encoder.matches("secret", encoded));
+    assertFalse(encoder.matches("wrong", encoded));
+    assertTrue(encoder.upgradeEncoding(encoded));
+  }
+
+  @Test
+  void bcryptHashAtTheConfiguredCostIsKept() {
+    String encoded = encoder.encode("secret");
+
+    assertTrue(encoder.matches("secret", encoded));
+    assertFalse(encoder.upgradeEncoding(encoded));
+  }
+
+  @Test
+  void bcryptHashAtAnotherCostIsUpgraded() {
+    String cheaper = new BCryptPasswordEncoder(5).encode("secret");
+
+    assertTrue(encoder.matches("secret", cheaper));
+    assertTrue(encoder.upgradeEncoding(cheaper));
+
+    // Raising the configured cost upgrades the hashes made at the old one
+    LegacyPasswordEncoder stronger = new LegacyPasswordEncoder(new BCryptPasswordEncoder(12), 12);
+    assertTrue(stronger.upgradeEncoding(encoder.encode("secret")));
+  }
+
+  @Test
+  void everyBcryptVariantIsRecognized() {
+    String hash = encoder.encode("secret").substring(4);
+
+    assertFalse(encoder.upgradeEncoding("$2a$" + hash));
+    assertFalse(encoder.upgradeEncoding("$2b$" + hash));
+    assertFalse(encoder.upgradeEncoding("$2y$" + hash));
+  }
+
+  @Test
+  void missingOrMalformedHashesAreNotUpgraded() {
+    assertFalse(encoder.upgradeEncoding(null));
+    assertFalse(encoder.upgradeEncoding(""));
+    assertFalse(encoder.upgradeEncoding("$2a$"));
+    assertFalse(encoder.upgradeEncoding("$2a$xx$abcdef"));
+  }
+}
@@ -0,0 +1,124 @@
+package cmsc128.dentapp.modules.storage.controllers;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+class ImageControllerTest {
+
+  private static final String ETAG = "\"3e8-18c\"";
+
+  // A Last-Modified with milliseconds, which HTTP dates cannot carry
+  private static final long LAST_MODIFIED = 1_700_000_000_123L;
+
+  private static String httpDate(long millis) {
+    return DateTimeFormatter.RFC_1123_DATE_TIME.format(
+        Instant.ofEpochMilli(millis).atOffset(ZoneOffset.UTC));
+  }
+
+  @Test
+  void parsesClosedOpenAndSuffixRanges() {
+    assertArrayEquals(new long[] {0, 99}, ImageController.parseRange("bytes=0-99", 1000));
+    assertArrayEquals(new long[] {500, 999}, ImageController.parseRange("bytes=500-", 1000));
+    assertArrayEquals(new long[] {900, 999}, ImageController.parseRange("bytes=-100", 1000));
+    assertArrayEquals(new long[] {0, 0}, ImageController.parseRange(" bytes=0-0 ", 1000));
+  }
+
+  @Test
+  void clampsRangesToTheFile() {
+    assertArrayEquals(new long[] {900, 999}, ImageController.parseRange("bytes=900-5000", 1000));
+    assertArrayEquals(new long[] {0, 999}, ImageController.parseRange("bytes=-5000", 1000));
+  }
+
+  @Test
+  void rejectsUnsatisfiableRanges() {
+    assertNull(ImageController.parseRange("bytes=1000-", 1000));
+    assertNull(ImageController.parseRange("bytes=5-4", 1000));
+    assertNull(ImageController.parseRange("bytes=-0", 1000));
+    assertNull(ImageController.parseRange("bytes=0-0", 0));
+  }
+
+  @Test
+  void rejectsMalformedAndMultipleRanges() {
+    assertNull(ImageController.parseRange("bytes=-", 1000));
+    assertNull(ImageController.parseRange("bytes=0-1,5-6", 1000));
+    assertNull(ImageController.parseRange("items=0-1", 1000));
+    assertNull(ImageController.parseRange("bytes=99999999999999999999-", 1000));
+  }
+
+  @Test
+  void ifNoneMatchAcceptsStrongWeakListedAndWildcardTags() {
+    assertTrue(ImageController.matchesAny(ETAG, ETAG));
+    assertTrue(ImageController.matchesAny("W/" + ETAG, ETAG));
+    assertTrue(ImageController.matchesAny("\"other\", " + ETAG, ETAG));
+    assertTrue(ImageController.matchesAny("*", ETAG));
+
+    assertFalse(ImageController.matchesAny("\"other\"", ETAG));
+    assertFalse(ImageController.matchesAny("3e8-18c", ETAG));
+  }
+
+  @Test
+  void notModifiedWhenIfNoneMatchMatches() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\", " + ETAG);
+
+    assertTrue(ImageController.isNotModified(request, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  void ifNoneMatchTakesPrecedenceOverIfModifiedSince() {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"other\"");
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, httpDate(LAST_MODIFIED + 60_000));
+
+    assertFalse(ImageController.isNotModified(request, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  void ifModifiedSinceComparesWholeSeconds() {
+    MockHttpServletRequest sameSecond = new MockHttpServletRequest();
+    sameSecond.addHeader(HttpHeaders.IF_MODIFIED_SINCE, httpDate(LAST_MODIFIED));
+    assertTrue(ImageController.isNotModified(sameSecond, ETAG, LAST_MODIFIED));
+
+    MockHttpServletRequest earlier = new MockHttpServletRequest();
+    earlier.addHeader(HttpHeaders.IF_MODIFIED_SINCE, httpDate(LAST_MODIFIED - 1000));
+    assertFalse(ImageController.isNotModified(earlier, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  void modifiedWithoutValidConditionalHeaders() {
+    assertFalse(ImageController.isNotModified(new MockHttpServletRequest(), ETAG, LAST_MODIFIED));
+
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, "not a date");
+    assertFalse(ImageController.isNotModified(request, ETAG, LAST_MODIFIED));
+  }
+
+  @Test
+  void webpIsOnlyServedWhenAcceptListsItExplicitly() {
+    assertTrue(acceptsWebp("image/avif,image/webp,*/*;q=0.8"));
+    assertTrue(acceptsWebp("image/webp;q=0.5"));
+
+    assertFalse(acceptsWebp(null));
+    assertFalse(acceptsWebp("*/*"));
+    assertFalse(acceptsWebp("image/*"));
+    assertFalse(acceptsWebp("image/png,image/webp;q=0"));
+  }
+
+  private static boolean acceptsWebp(String accept) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    if (accept != null) {
+      request.addHeader(HttpHeaders.ACCEPT, accept);
+    }
+    return ImageController.acceptsWebp(request);
+  }
+}
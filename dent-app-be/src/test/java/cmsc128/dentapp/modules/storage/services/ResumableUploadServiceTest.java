@@ -0,0 +1,211 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.NoSuchElementException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MaxUploadSizeExceededException;
+
+import cmsc128.dentapp.Service.FileStorageService;
+import cmsc128.dentapp.modules.patient.repositories.PatientRepository;
+import cmsc128.dentapp.modules.storage.repositories.ClinicalFileRepository;
+
+class ResumableUploadServiceTest {
+
+  private static final long MAX_UPLOAD_BYTES = 100;
+  private static final long MAX_CHUNK_BYTES = 10;
+
+  @TempDir Path directory;
+
+  private final FileStorageService fileStorageService = mock(FileStorageService.class);
+  private final ClinicalFileRepository clinicalFileRepository = mock(ClinicalFileRepository.class);
+
+  private ResumableUploadService service;
+
+  @BeforeEach
+  void setUp() throws IOException {
+    service = newService();
+  }
+
+  private ResumableUploadService newService() throws IOException {
+    return new ResumableUploadService(
+        fileStorageService,
+        clinicalFileRepository,
+        mock(PatientRepository.class),
+        directory.toString(),
+        MAX_UPLOAD_BYTES,
+        MAX_CHUNK_BYTES,
+        2,
+        24,
+        "png,dcm");
+  }
+
+  private ResumableUpload create(long length) throws IOException {
+    return service.create("dentist", 5L, "radiograph", "scan.dcm", length);
+  }
+
+  private long append(ResumableUpload upload, long offset, int bytes) throws IOException {
+    return service.append("dentist", upload.getId(), offset, chunk(bytes));
+  }
+
+  private static InputStream chunk(int bytes) {
+    return new ByteArrayInputStream(new byte[bytes]);
+  }
+
+  private byte[] received(ResumableUpload upload) throws IOException {
+    return Files.readAllBytes(directory.resolve(upload.getId() + ".part"));
+  }
+
+  @Test
+  void chunksAreAppendedAtTheReportedOffset() throws IOException {
+    ResumableUpload upload = create(15);
+
+    assertEquals(0, service.offset(upload));
+    assertEquals(10, append(upload, 0, 10));
+    assertEquals(15, append(upload, 10, 5));
+    assertEquals(15, service.offset(upload));
+  }
+
+  @Test
+  void chunkAtAnyOtherOffsetIsRejected() throws IOException {
+    ResumableUpload upload = create(15);
+    append(upload, 0, 4);
+
+    assertThrows(IllegalStateException.class, () -> append(upload, 0, 4));
+    assertThrows(IllegalStateException.class, () -> append(upload, 8, 4));
+    assertEquals(4, service.offset(upload));
+  }
+
+  @Test
+  void chunkLargerThanMaxChunkBytesIsDroppedWhole() throws IOException {
+    ResumableUpload upload = create(50);
+    append(upload, 0, 3);
+
+    assertThrows(MaxUploadSizeExceededException.class, () -> append(upload, 3, 11));
+    assertEquals(3, service.offset(upload));
+  }
+
+  @Test
+  void chunkPastTheUploadLengthIsDroppedWhole() throws IOException {
+    ResumableUpload upload = create(15);
+    append(upload, 0, 10);
+
+    assertThrows(MaxUploadSizeExceededException.class, () -> append(upload, 10, 6));
+    assertEquals(10, service.offset(upload));
+  }
+
+  @Test
+  void bytesReceivedBeforeABrokenChunkAreKept() throws IOException {
+    ResumableUpload upload = create(15);
+    InputStream broken =
+        new InputStream() {
+          private boolean sent;
+
+          @Override
+          public int read() throws IOException {
+            throw new IOException("Connection reset");
+          }
+
+          @Override
+          public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (sent) {
+              throw new IOException("Connection reset");
+            }
+            sent = true;
+            for (int i = 0; i < 4; i++) {
+              buffer[offset + i] = (byte) (i + 1);
+            }
+            return 4;
+          }
+        };
+
+    assertThrows(IOException.class, () -> service.append("dentist", upload.getId(), 0, broken));
+    assertEquals(4, service.offset(upload));
+    assertArrayEquals(new byte[] {1, 2, 3, 4}, received(upload));
+    assertEquals(9, append(upload, 4, 5));
+  }
+
+  @Test
+  void uploadsOfOtherUsersCannotBeAppendedTo() throws IOException {
+    ResumableUpload upload = create(15);
+
+    assertThrows(
+        NoSuchElementException.class,
+        () -> service.append("someone-else", upload.getId(), 0, chunk(1)));
+    assertThrows(
+        NoSuchElementException.class, () -> service.append("dentist", "../escape", 0, chunk(1)));
+  }
+
+  @Test
+  void createChecksLengthFileTypeAndActiveUploads() throws IOException {
+    assertThrows(IllegalArgumentException.class, () -> create(0));
+    assertThrows(MaxUploadSizeExceededException.class, () -> create(MAX_UPLOAD_BYTES + 1));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> service.create("dentist", 5L, "radiograph", "scan.exe", 10));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> service.create("dentist", 5L, "../radiograph", "scan.png", 10));
+
+    create(10);
+    create(10);
+    assertThrows(IllegalStateException.class, () -> create(10));
+    service.create("assistant", 5L, "radiograph", "scan.png", 10);
+  }
+
+  @Test
+  void cancelledUploadLeavesNoFilesBehind() throws IOException {
+    ResumableUpload upload = create(15);
+    append(upload, 0, 5);
+
+    service.cancel("dentist", upload.getId());
+
+    assertThrows(NoSuchElementException.class, () -> service.get("dentist", upload.getId()));
+    assertFalse(Files.exists(directory.resolve(upload.getId() + ".part")));
+    assertFalse(Files.exists(directory.resolve(upload.getId() + ".info")));
+  }
+
+  @Test
+  void uploadIsDroppedWhenItCannotBeRecorded() throws IOException {
+    ResumableUpload upload = create(5);
+    append(upload, 0, 5);
+    when(fileStorageService.saveLargeUpload(eq(5L), any(), any(), any()))
+        .thenReturn("patient_5/clinical_files/ab/cd/radiograph.dcm");
+    when(clinicalFileRepository.save(any())).thenThrow(new IllegalStateException("db down"));
+
+    assertThrows(IllegalStateException.class, () -> service.complete("dentist", upload.getId()));
+
+    // The stored copy is deleted and the upload is gone instead of failing on every retry
+    verify(fileStorageService).deleteFile("patient_5/clinical_files/ab/cd/radiograph.dcm");
+    assertThrows(NoSuchElementException.class, () -> service.get("dentist", upload.getId()));
+  }
+
+  @Test
+  void partialUploadSurvivesARestart() throws IOException {
+    ResumableUpload upload = create(15);
+    append(upload, 0, 6);
+
+    ResumableUploadService restarted = newService();
+    ResumableUpload restored = restarted.get("dentist", upload.getId());
+
+    assertEquals(15, restored.getLength());
+    assertEquals(6, restarted.offset(restored));
+    assertEquals(15, restarted.append("dentist", upload.getId(), 6, chunk(9)));
+  }
+}
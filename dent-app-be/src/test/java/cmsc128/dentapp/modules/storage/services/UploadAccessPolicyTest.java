@@ -0,0 +1,29 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+class UploadAccessPolicyTest {
+
+  @Test
+  void readsThePatientFromLegacyAndShardedPaths() {
+    assertEquals(5L, UploadAccessPolicy.patientIdOf("patient_5/dental_charts/teeth11.png"));
+    assertEquals(
+        42L, UploadAccessPolicy.patientIdOf("patient_42/dental_charts/3f/a2/teeth11.png"));
+  }
+
+  @Test
+  void pathsOutsideAPatientFolderHaveNoPatient() {
+    assertNull(UploadAccessPolicy.patientIdOf("cas/ab/cd/abcdef.png"));
+    assertNull(UploadAccessPolicy.patientIdOf("dental_charts/patient_5/teeth11.png"));
+  }
+
+  @Test
+  void malformedPatientFoldersHaveNoPatient() {
+    assertNull(UploadAccessPolicy.patientIdOf("patient_/teeth11.png"));
+    assertNull(UploadAccessPolicy.patientIdOf("patient_x/teeth11.png"));
+    assertNull(UploadAccessPolicy.patientIdOf("patient_5"));
+  }
+}
@@ -0,0 +1,63 @@
+package cmsc128.dentapp.modules.storage.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class UploadPathLayoutTest {
+
+  private static final String FOLDER = "patient_5/dental_charts";
+  private static final String FILE_NAME = "teeth11_20240101_101500_ab12cd34.png";
+  private static final String LEGACY_PATH = FOLDER + "/" + FILE_NAME;
+
+  @Test
+  void shardsByTheHashOfTheFileName() {
+    String hash = ContentAddressedStore.hash(FILE_NAME.getBytes(StandardCharsets.UTF_8));
+    String expected =
+        FOLDER + "/" + hash.substring(0, 2) + "/" + hash.substring(2, 4) + "/" + FILE_NAME;
+
+    assertEquals(expected, UploadPathLayout.sharded(FOLDER, FILE_NAME));
+    // The shard depends on the name only, so another folder gets the same two levels
+    assertEquals(
+        expected.replace(FOLDER, "patient_6/soft_tissue_drawings"),
+        UploadPathLayout.sharded("patient_6/soft_tissue_drawings", FILE_NAME));
+  }
+
+  @Test
+  void legacyPathRoundTripsThroughTheShardedLayout() {
+    String sharded = UploadPathLayout.toSharded(LEGACY_PATH);
+
+    assertEquals(UploadPathLayout.sharded(FOLDER, FILE_NAME), sharded);
+    assertFalse(UploadPathLayout.isLegacy(sharded));
+    assertEquals(LEGACY_PATH, UploadPathLayout.unsharded(sharded));
+  }
+
+  @Test
+  void onlyPatientFilesDirectlyInACategoryAreLegacy() {
+    assertTrue(UploadPathLayout.isLegacy(LEGACY_PATH));
+
+    assertFalse(UploadPathLayout.isLegacy(null));
+    assertFalse(UploadPathLayout.isLegacy("patient_5/" + FILE_NAME));
+    assertFalse(UploadPathLayout.isLegacy("cas/ab/" + FILE_NAME));
+    assertFalse(UploadPathLayout.isLegacy(UploadPathLayout.sharded(FOLDER, FILE_NAME)));
+  }
+
+  @Test
+  void pathsOutsideTheLayoutAreReturnedUnchanged() {
+    String blobPath = "cas/ab/cd/abcdef.png";
+    String shortPath = "patient_5/" + FILE_NAME;
+
+    assertEquals(blobPath, UploadPathLayout.toSharded(blobPath));
+    assertEquals(shortPath, UploadPathLayout.toSharded(shortPath));
+
+    assertEquals(LEGACY_PATH, UploadPathLayout.unsharded(LEGACY_PATH));
+    assertEquals(blobPath, UploadPathLayout.unsharded(blobPath));
+    assertEquals("cas/ab/cd/ef/x.png", UploadPathLayout.unsharded("cas/ab/cd/ef/x.png"));
+    assertNull(UploadPathLayout.unsharded(null));
+  }
+}